@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex.maven;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.apex.Apex;
+import org.apex.WiringDescriptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves the wiring model of the project at build time and writes it as a
+ * {@link WiringDescriptor} into the classes packaged in the jar. The build
+ * fails on unresolved or ambiguous injection points.
+ *
+ * @author WangYi
+ * @since 2020/11/13
+ */
+@Mojo(name = "wiring", defaultPhase = LifecyclePhase.PREPARE_PACKAGE,
+        requiresDependencyResolution = ResolutionScope.RUNTIME)
+public class WiringMojo extends AbstractMojo {
+
+  @Parameter(defaultValue = "${project}", readonly = true, required = true)
+  private MavenProject project;
+
+  /**
+   * Packages to discover beans in, the same as {@link Apex#packages()} at runtime.
+   */
+  @Parameter(required = true)
+  private List<String> packages;
+
+  /**
+   * Names of the annotations marking bean classes, the same as
+   * {@link Apex#typeAnnotations()} at runtime.
+   */
+  @Parameter
+  private List<String> typeAnnotations = new ArrayList<>(Arrays.asList(
+          "org.apex.annotation.Singleton",
+          "org.apex.annotation.ConfigBean",
+          "org.apex.annotation.PropertyBean"));
+
+  /**
+   * Packages to exclude from discovery.
+   */
+  @Parameter
+  private List<String> rejectPackages = new ArrayList<>();
+
+  /**
+   * Jars to exclude from discovery, the same as {@link Apex#rejectJars()} at runtime.
+   */
+  @Parameter
+  private List<String> rejectJars = new ArrayList<>();
+
+  /**
+   * Names of the interfaces whose implementations are beans, the same as
+   * {@link Apex#implInterfaces()} at runtime.
+   */
+  @Parameter
+  private List<String> implInterfaces = new ArrayList<>();
+
+  /**
+   * Create beans on first use unless they say otherwise.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean lazy;
+
+  /**
+   * Fail the build on unresolved or ambiguous injection points, instead of
+   * only logging them.
+   */
+  @Parameter(property = "apex.wiring.failOnError", defaultValue = "true")
+  private boolean failOnError;
+
+  @Parameter(property = "apex.wiring.skip", defaultValue = "false")
+  private boolean skip;
+
+  @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+  private File outputDirectory;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    if (skip) {
+      getLog().info("Skipping apex wiring");
+      return;
+    }
+    final Thread thread = Thread.currentThread();
+    final ClassLoader contextClassLoader = thread.getContextClassLoader();
+    try (URLClassLoader classLoader = new URLClassLoader(classpath(), getClass().getClassLoader())) {
+      thread.setContextClassLoader(classLoader);
+      final WiringDescriptor descriptor = WiringDescriptor.create(apex(classLoader));
+      for (String problem : descriptor.problems()) {
+        getLog().error(problem);
+      }
+      if (!descriptor.problems().isEmpty() && failOnError) {
+        throw new MojoFailureException(descriptor.problems().size()
+                + " injection point(s) cannot be wired, see the errors above");
+      }
+      write(descriptor);
+      getLog().info("Wrote apex wiring of " + descriptor.beanDefinitions().size() + " bean(s)");
+    } catch (IOException e) {
+      throw new MojoExecutionException("Cannot write " + WiringDescriptor.LOCATION, e);
+    } finally {
+      thread.setContextClassLoader(contextClassLoader);
+    }
+  }
+
+  private Apex apex(ClassLoader classLoader) throws MojoExecutionException {
+    final Apex apex = Apex.of();
+    apex.packages().addAll(packages);
+    apex.rejectPackages(rejectPackages.toArray(new String[0]));
+    apex.rejectJars(rejectJars.toArray(new String[0]));
+    apex.lazy(lazy);
+    for (String implInterface : implInterfaces) {
+      try {
+        apex.implInterface(Class.forName(implInterface, false, classLoader));
+      } catch (ClassNotFoundException e) {
+        throw new MojoExecutionException("Not a class: " + implInterface, e);
+      }
+    }
+    final List<Class<? extends Annotation>> annotations = new ArrayList<>();
+    for (String typeAnnotation : typeAnnotations) {
+      try {
+        annotations.add(Class.forName(typeAnnotation, false, classLoader).asSubclass(Annotation.class));
+      } catch (ClassNotFoundException | ClassCastException e) {
+        throw new MojoExecutionException("Not an annotation: " + typeAnnotation, e);
+      }
+    }
+    return apex.typeAnnotation(annotations);
+  }
+
+  private URL[] classpath() throws MojoExecutionException {
+    try {
+      final List<URL> urls = new ArrayList<>();
+      for (String element : project.getRuntimeClasspathElements()) {
+        urls.add(new File(element).toURI().toURL());
+      }
+      return urls.toArray(new URL[0]);
+    } catch (DependencyResolutionRequiredException | MalformedURLException e) {
+      throw new MojoExecutionException("Cannot resolve the runtime classpath", e);
+    }
+  }
+
+  private void write(WiringDescriptor descriptor) throws IOException {
+    final Path target = outputDirectory.toPath().resolve(WiringDescriptor.LOCATION);
+    Files.createDirectories(target.getParent());
+    try (OutputStream outputStream = Files.newOutputStream(target)) {
+      descriptor.write(outputStream);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes the bean index read by {@code org.apex.BeanIndex} at compile time.
+ * Every concrete class of the compilation is listed together with the
+ * annotations it carries and the interfaces it implements, so the runtime
+ * can select the configured type annotations and impl interfaces without
+ * scanning the classpath. Like the scan, an annotation counts when it is
+ * inherited from a superclass or present on another annotation of the
+ * class, so composed annotations select their classes too.
+ *
+ * @author WangYi
+ * @since 2020/11/2
+ */
+@SupportedAnnotationTypes("*")
+public class BeanIndexProcessor extends AbstractProcessor {
+  static final String INDEX_LOCATION = "META-INF/apex.index";
+
+  private final Map<String, Set<String>> entries = new TreeMap<>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getRootElements()) {
+      collect(element);
+    }
+    if (roundEnv.processingOver()) {
+      writeIndex();
+    }
+    return false;
+  }
+
+  private void collect(Element element) {
+    if (element.getKind() != ElementKind.CLASS) {
+      return;
+    }
+    TypeElement typeElement = (TypeElement) element;
+    Set<String> stereotypes = new LinkedHashSet<>();
+    if (!typeElement.getModifiers().contains(Modifier.ABSTRACT)) {
+      // with the @Inherited annotations of the superclasses
+      collectAnnotations(processingEnv.getElementUtils().getAllAnnotationMirrors(typeElement), stereotypes);
+      collectInterfaces(typeElement.asType(), stereotypes);
+    }
+    if (!stereotypes.isEmpty()) {
+      entries.put(binaryName(typeElement), stereotypes);
+    }
+    for (Element enclosed : typeElement.getEnclosedElements()) {
+      if (enclosed.getModifiers().contains(Modifier.STATIC)) {
+        collect(enclosed);
+      }
+    }
+  }
+
+  private void collectAnnotations(List<? extends AnnotationMirror> mirrors, Set<String> stereotypes) {
+    for (AnnotationMirror mirror : mirrors) {
+      TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+      String name = binaryName(annotation);
+      // the meta-annotations of annotations, @Retention and the like, select no bean
+      if (!name.startsWith("java.lang.annotation.") && stereotypes.add(name)) {
+        collectAnnotations(annotation.getAnnotationMirrors(), stereotypes);
+      }
+    }
+  }
+
+  private void collectInterfaces(TypeMirror type, Set<String> stereotypes) {
+    for (TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+      if (supertype.getKind() != TypeKind.DECLARED) {
+        continue;
+      }
+      Element element = ((DeclaredType) supertype).asElement();
+      if (element.getKind() == ElementKind.INTERFACE) {
+        stereotypes.add(binaryName((TypeElement) element));
+      }
+      collectInterfaces(supertype, stereotypes);
+    }
+  }
+
+  private String binaryName(TypeElement typeElement) {
+    return processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+  }
+
+  private void writeIndex() {
+    Map<String, String> index = new TreeMap<>();
+    readPreviousIndex(index);
+    for (Map.Entry<String, Set<String>> entry : entries.entrySet()) {
+      index.put(entry.getKey(), String.join(",", entry.getValue()));
+    }
+    if (index.isEmpty()) {
+      return;
+    }
+    try {
+      FileObject resource = processingEnv.getFiler()
+              .createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+      try (Writer writer = new OutputStreamWriter(resource.openOutputStream(), StandardCharsets.UTF_8)) {
+        for (Map.Entry<String, String> entry : index.entrySet()) {
+          writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+        }
+      }
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+              "Unable to write bean index " + INDEX_LOCATION + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Keep the entries of an index left by an earlier incremental compilation,
+   * as long as their classes still exist.
+   */
+  private void readPreviousIndex(Map<String, String> index) {
+    try {
+      FileObject resource = processingEnv.getFiler()
+              .getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+      Properties previous = new Properties();
+      try (InputStream inputStream = resource.openInputStream()) {
+        previous.load(inputStream);
+      }
+      for (String className : previous.stringPropertyNames()) {
+        if (processingEnv.getElementUtils().getTypeElement(className.replace('$', '.')) != null) {
+          index.put(className, previous.getProperty(className));
+        }
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      // no previous index
+    }
+  }
+}
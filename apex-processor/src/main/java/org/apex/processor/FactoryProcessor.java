@@ -0,0 +1,953 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates the source of a reflection free {@code org.apex.GeneratedFactory}
+ * from the annotations {@code ApexContext} understands. The factory is only
+ * generated when the {@value #FACTORY_OPTION} option names its class, for
+ * example {@code -Aapex.factory=com.example.AppFactory}.
+ * <p>
+ * Beans are created with {@code new} and wired with direct field writes, or
+ * setter calls for private fields, followed by calls to their Inject
+ * methods. Both happen in a {@code *_ApexWiring}
+ * class generated next to each bean, so package-private members are
+ * reachable. Every injection point is resolved at compile time the way the
+ * runtime does; unresolved or ambiguous ones, private members without a
+ * setter, conditional beans and beans in other scopes than the singleton
+ * scope are reported as compile errors. All beans are singletons created when the factory is initialized.
+ * <p>
+ * A {@code Provider}, {@code Supplier} or {@code Optional} injection point
+ * is resolved to the bean of its type argument. Providers and suppliers look
+ * the bean up when called, so they don't order the wiring; an optional of a
+ * missing bean is empty.
+ *
+ * @author WangYi
+ * @since 2020/11/14
+ */
+@SupportedOptions(FactoryProcessor.FACTORY_OPTION)
+@SupportedAnnotationTypes({
+        FactoryProcessor.SINGLETON,
+        FactoryProcessor.CONFIG_BEAN,
+        FactoryProcessor.PROPERTY_BEAN})
+public class FactoryProcessor extends AbstractProcessor {
+  static final String FACTORY_OPTION = "apex.factory";
+  static final String SINGLETON = "org.apex.annotation.Singleton";
+  static final String CONFIG_BEAN = "org.apex.annotation.ConfigBean";
+  static final String PROPERTY_BEAN = "org.apex.annotation.PropertyBean";
+
+  private static final String ANNOTATION = "org.apex.annotation.";
+  private static final String WIRING_SUFFIX = "_ApexWiring";
+  private static final String ENVIRONMENT = "environment$";
+  private static final String OPTIONAL = "java.util.Optional";
+  private static final List<String> WRAPPERS = Arrays.asList(
+          ANNOTATION + "Provider", "java.util.function.Supplier", OPTIONAL);
+
+  private final Map<String, Bean> beans = new LinkedHashMap<>();
+  private final Map<String, Wiring> wirings = new LinkedHashMap<>();
+  private final Map<Element, String> wrappers = new HashMap<>();
+  private boolean generated;
+  private boolean failed;
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    final String factoryName = processingEnv.getOptions().get(FACTORY_OPTION);
+    if (factoryName == null || generated || roundEnv.getRootElements().isEmpty()) {
+      return false;
+    }
+    generated = true;
+    for (Element element : roundEnv.getRootElements()) {
+      collect(element);
+    }
+    for (Bean bean : new ArrayList<>(beans.values())) {
+      if (bean.method == null && bean.type.getAnnotationMirrors().stream()
+              .anyMatch(mirror -> name(mirror).equals(CONFIG_BEAN))) {
+        collectBeanMethods(bean);
+      }
+    }
+    for (Bean bean : beans.values()) {
+      resolve(bean);
+    }
+    final List<Bean> order = order();
+    if (!failed) {
+      for (Wiring wiring : wirings.values()) {
+        if (wiring.constructor != null || !wiring.points.isEmpty()
+                || !wiring.injectMethods.isEmpty() || !wiring.methods.isEmpty()) {
+          writeWiring(wiring);
+        }
+      }
+      writeFactory(factoryName, order);
+    }
+    return false;
+  }
+
+  private void collect(Element element) {
+    if (element.getKind() != ElementKind.CLASS) {
+      return;
+    }
+    final TypeElement typeElement = (TypeElement) element;
+    if (!typeElement.getModifiers().contains(Modifier.ABSTRACT) && isBean(typeElement)) {
+      conditional(typeElement);
+      singleton(typeElement);
+      final ExecutableElement constructor = constructor(typeElement);
+      if (constructor == null) {
+        error(typeElement, "A bean of the generated factory needs a non-private Inject or no-arg constructor");
+      } else {
+        wiring(typeElement).constructor = constructor;
+      }
+      put(new Bean(binaryName(typeElement), erasure(typeElement.asType()), typeElement, null));
+    }
+    for (Element enclosed : typeElement.getEnclosedElements()) {
+      if (enclosed.getModifiers().contains(Modifier.STATIC)) {
+        collect(enclosed);
+      }
+    }
+  }
+
+  private void collectBeanMethods(Bean configBean) {
+    for (ExecutableElement method : ElementFilter.methodsIn(configBean.type.getEnclosedElements())) {
+      if (annotation(method, "Bean") == null) {
+        continue;
+      }
+      if (method.getReturnType().getKind() == TypeKind.VOID) {
+        error(method, "The return value of the method marked with Bean annotation cannot be void");
+        continue;
+      }
+      if (method.getModifiers().contains(Modifier.PRIVATE) || method.getModifiers().contains(Modifier.STATIC)) {
+        error(method, "A bean method of the generated factory must not be private or static");
+        continue;
+      }
+      conditional(method);
+      singleton(method);
+      final TypeMirror returnType = erasure(method.getReturnType());
+      // named after the method, so that several methods may return the same type
+      final String value = stringValue(annotation(method, "Bean"));
+      final String name = value != null && !value.isEmpty() ? value : method.getSimpleName().toString();
+      wiring(configBean.type).methods.add(method);
+      put(new Bean(name, returnType, (TypeElement) types().asElement(returnType), method)
+              .factoryBean(configBean));
+    }
+  }
+
+  private void put(Bean bean) {
+    final Element element = bean.element();
+    if (bean.method != null) {
+      bean.qualifiers.add(bean.name);
+    } else {
+      final String value = stringValue(annotation(element, "Singleton"));
+      if (value != null && !value.isEmpty()) {
+        bean.qualifiers.add(value);
+      }
+    }
+    final String named = stringValue(annotation(element, "Named"));
+    if (named != null && !named.isEmpty()) {
+      bean.qualifiers.add(named);
+    }
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      final String qualifier = stringValue(annotation(mirror.getAnnotationType().asElement(), "Qualifier"));
+      if (qualifier != null && !qualifier.isEmpty()) {
+        bean.qualifiers.add(qualifier);
+      }
+    }
+    bean.primary = annotation(element, "Primary") != null;
+    final Bean previous = beans.remove(bean.name);
+    if (previous != null) {
+      warning(bean.element(), "Overriding bean " + bean.name + " defined by " + previous.element());
+    }
+    beans.put(bean.name, bean);
+  }
+
+  /**
+   * Resolve the injection points of the bean class, the parameters of its
+   * bean method or Inject constructor and the values read from the environment
+   */
+  private void resolve(Bean bean) {
+    if (bean.method != null) {
+      resolveParameters(bean.dependencies, bean.method);
+    }
+    if (bean.type == null) {
+      return;
+    }
+    final Wiring wiring = wiring(bean.type);
+    if (bean.method == null && wiring.constructor != null && !wiring.constructor.getParameters().isEmpty()) {
+      bean.constructed = true;
+      resolveParameters(bean.dependencies, wiring.constructor);
+    }
+    if (!wiring.resolved) {
+      wiring.resolved = true;
+      resolveFields(wiring);
+    }
+    bean.injected = !wiring.points.isEmpty() || !wiring.injectMethods.isEmpty();
+  }
+
+  private void resolveParameters(List<Bean> dependencies, ExecutableElement executable) {
+    for (VariableElement parameter : executable.getParameters()) {
+      dependencies.add(candidate(parameter, unwrap(parameter, parameter.asType())));
+    }
+  }
+
+  private void resolveFields(Wiring wiring) {
+    final AnnotationMirror propertyBean = annotation(wiring.type, "PropertyBean");
+    final String prefix = stringValue(propertyBean);
+    for (VariableElement field : ElementFilter.fieldsIn(wiring.type.getEnclosedElements())) {
+      if (field.getModifiers().contains(Modifier.STATIC)) {
+        continue;
+      }
+      if (annotation(field, "Inject") != null) {
+        final TypeMirror type = unwrap(field, field.asType());
+        final Bean dependency = candidate(field, type);
+        if (dependency != null) {
+          wiring.points.add(new Point(field, dependency, null));
+        } else if (OPTIONAL.equals(wrappers.get(field))) {
+          wiring.points.add(new Point(field, null, OPTIONAL + ".empty()"));
+        }
+      }
+      final String value = stringValue(annotation(field, "Value"));
+      if (value != null && value.startsWith("${") && value.endsWith("}")) {
+        if (!isType(field.asType(), "java.lang.String")) {
+          error(field, "A Value field of the generated factory must be a String");
+        }
+        wiring.points.add(new Point(field, null, ENVIRONMENT + ".getString(\""
+                + escape(value.substring(2, value.length() - 1)) + "\", null)"));
+      }
+      if (propertyBean != null) {
+        wiring.points.add(new Point(field, null, property(field, prefix + "." + field.getSimpleName())));
+      }
+    }
+    for (Point point : wiring.points) {
+      point.access = access(point.field);
+    }
+    resolveInjectMethods(wiring);
+  }
+
+  /**
+   * Resolve the Inject methods of the type and its superclasses, superclass
+   * methods first, skipping the methods overridden further down
+   */
+  private void resolveInjectMethods(Wiring wiring) {
+    final List<TypeElement> hierarchy = new ArrayList<>();
+    for (TypeElement type = wiring.type; type != null; type = superclass(type)) {
+      hierarchy.add(0, type);
+    }
+    for (int i = 0; i < hierarchy.size(); i++) {
+      for (ExecutableElement method : ElementFilter.methodsIn(hierarchy.get(i).getEnclosedElements())) {
+        final Set<Modifier> modifiers = method.getModifiers();
+        if (annotation(method, "Inject") == null || modifiers.contains(Modifier.STATIC)
+                || modifiers.contains(Modifier.ABSTRACT)
+                || overridden(method, hierarchy.subList(i + 1, hierarchy.size()), wiring.type)) {
+          continue;
+        }
+        if (modifiers.contains(Modifier.PRIVATE) || (!modifiers.contains(Modifier.PUBLIC)
+                && !packageOf(method).equals(packageOf(wiring.type)))) {
+          error(method, "An Inject method of the generated factory must be public or in the package of " + wiring.type);
+          continue;
+        }
+        final InjectMethod injectMethod = new InjectMethod(method);
+        resolveParameters(injectMethod.dependencies, method);
+        wiring.injectMethods.add(injectMethod);
+      }
+    }
+  }
+
+  private TypeElement superclass(TypeElement type) {
+    final TypeMirror superclass = type.getSuperclass();
+    if (superclass.getKind() != TypeKind.DECLARED) {
+      return null;
+    }
+    final TypeElement element = (TypeElement) types().asElement(superclass);
+    return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+  }
+
+  private boolean overridden(ExecutableElement method, List<TypeElement> subclasses, TypeElement type) {
+    for (TypeElement subclass : subclasses) {
+      for (ExecutableElement override : ElementFilter.methodsIn(subclass.getEnclosedElements())) {
+        if (processingEnv.getElementUtils().overrides(override, method, type)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private String packageOf(Element element) {
+    return processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+  }
+
+  /**
+   * Get the type argument of a Provider, Supplier or Optional injection point,
+   * remembering its wrapper, or the type of any other point
+   */
+  private TypeMirror unwrap(Element point, TypeMirror type) {
+    if (type.getKind() != TypeKind.DECLARED) {
+      return type;
+    }
+    final DeclaredType declared = (DeclaredType) type;
+    final String name = ((TypeElement) declared.asElement()).getQualifiedName().toString();
+    if (WRAPPERS.contains(name) && declared.getTypeArguments().size() == 1
+            && declared.getTypeArguments().get(0).getKind() == TypeKind.DECLARED) {
+      wrappers.put(point, name);
+      return declared.getTypeArguments().get(0);
+    }
+    return type;
+  }
+
+  /**
+   * Whether the injection point is a provider or supplier, which looks its
+   * bean up when called
+   */
+  private boolean deferred(Element point) {
+    final String wrapper = wrappers.get(point);
+    return wrapper != null && !wrapper.equals(OPTIONAL);
+  }
+
+  /**
+   * Get the qualifier of an injection point: the value of Named, or the value
+   * of the Qualifier marking one of its annotations
+   */
+  private String qualifier(Element point) {
+    final String named = stringValue(annotation(point, "Named"));
+    if (named != null && !named.isEmpty()) {
+      return named;
+    }
+    for (AnnotationMirror mirror : point.getAnnotationMirrors()) {
+      final String qualifier = stringValue(annotation(mirror.getAnnotationType().asElement(), "Qualifier"));
+      if (qualifier != null && !qualifier.isEmpty()) {
+        return qualifier;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Find the bean for an injection point the way the runtime does: the bean
+   * named after its qualifier, the bean named after its type, or else the
+   * single bean assignable to it, the qualified one or the primary one
+   * among several
+   */
+  private Bean candidate(Element point, TypeMirror type) {
+    final String qualifier = qualifier(point);
+    final Bean qualified = qualifier != null ? beans.get(qualifier) : null;
+    if (qualified != null && types().isAssignable(qualified.typeMirror, erasure(type))) {
+      return qualified;
+    }
+    final Bean named = beans.get(binaryName(erasure(type)));
+    if (named != null) {
+      return named;
+    }
+    final List<Bean> candidates = new ArrayList<>();
+    for (Bean bean : beans.values()) {
+      if (types().isAssignable(bean.typeMirror, erasure(type))) {
+        candidates.add(bean);
+      }
+    }
+    List<Bean> selected = candidates;
+    if (qualifier != null) {
+      selected = new ArrayList<>();
+      for (Bean candidate : candidates) {
+        if (candidate.name.equals(qualifier) || candidate.qualifiers.contains(qualifier)) {
+          selected.add(candidate);
+        }
+      }
+    }
+    if (selected.size() == 1) {
+      return selected.get(0);
+    }
+    if (selected.size() > 1) {
+      final List<Bean> primary = new ArrayList<>();
+      for (Bean candidate : selected) {
+        if (candidate.primary) {
+          primary.add(candidate);
+        }
+      }
+      if (primary.size() == 1) {
+        return primary.get(0);
+      }
+      error(point, "Ambiguous injection point, candidates " + selected);
+      return null;
+    }
+    if (!OPTIONAL.equals(wrappers.get(point))) {
+      error(point, "Unresolved injection point, no bean of type " + erasure(type));
+    }
+    return null;
+  }
+
+  private String property(VariableElement field, String name) {
+    final TypeMirror type = erasure(field.asType());
+    final String value;
+    if (isType(type, "java.util.List")) {
+      value = "new org.apex.injector.type.ListTypeInjector().inject(\"" + escape(name) + "\")";
+    } else if (isType(type, "java.util.Map")) {
+      value = "new org.apex.injector.type.MapTypeInjector().inject(\"" + escape(name) + "\")";
+    } else {
+      value = ENVIRONMENT + ".getObject(\"" + escape(name) + "\")";
+    }
+    final TypeMirror boxed = type.getKind().isPrimitive() ? types().boxedClass((PrimitiveType) type).asType() : type;
+    return "(" + boxed + ") " + value;
+  }
+
+  /**
+   * Get how a field is written: directly, or through its setter when private
+   */
+  private String access(VariableElement field) {
+    final Set<Modifier> modifiers = field.getModifiers();
+    if (!modifiers.contains(Modifier.PRIVATE) && !modifiers.contains(Modifier.FINAL)) {
+      return field.getSimpleName() + " = ";
+    }
+    final String name = field.getSimpleName().toString();
+    final String setter = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    for (ExecutableElement method : ElementFilter.methodsIn(field.getEnclosingElement().getEnclosedElements())) {
+      if (method.getSimpleName().contentEquals(setter) && method.getParameters().size() == 1
+              && !method.getModifiers().contains(Modifier.PRIVATE)
+              && types().isAssignable(field.asType(), method.getParameters().get(0).asType())) {
+        return setter + "(";
+      }
+    }
+    error(field, "A private or final field of the generated factory needs a non-private setter " + setter);
+    return null;
+  }
+
+  /**
+   * Order the beans so that each one is wired after the beans it needs to be
+   * ready. Beans created by their no-arg constructor all exist before any
+   * is wired, so only bean methods, Inject constructors, their arguments and
+   * the beans injected into them add ordering constraints.
+   */
+  private List<Bean> order() {
+    final List<Bean> order = new ArrayList<>();
+    final Set<Bean> visiting = new LinkedHashSet<>();
+    for (Bean bean : beans.values()) {
+      visit(bean, order, visiting, false);
+    }
+    return order;
+  }
+
+  /**
+   * Order a bean after every bean it depends on, like the runtime dependency
+   * graph, so that its inject methods see injected collaborators. A cycle
+   * through injected fields and methods is allowed when it is closed by a
+   * bean created up front with its no-arg constructor, which is then
+   * injected after the beans depending on it. Any other cycle cannot be
+   * created. {@code injected} tells whether the bean is depended on by an
+   * injected field or method.
+   */
+  private void visit(Bean bean, List<Bean> order, Set<Bean> visiting, boolean injected) {
+    if (order.contains(bean)) {
+      return;
+    }
+    if (!visiting.add(bean)) {
+      if (!injected || bean.method != null || bean.constructed) {
+        error(bean.element(), "Bean method or constructor dependency cycle " + visiting);
+      }
+      return;
+    }
+    if (bean.method != null) {
+      visit(bean.factoryBean, order, visiting, false);
+    }
+    if (bean.method != null || bean.constructed) {
+      final List<? extends VariableElement> parameters = (bean.method != null
+              ? bean.method : wiring(bean.type).constructor).getParameters();
+      for (int i = 0; i < parameters.size(); i++) {
+        final Bean dependency = bean.dependencies.get(i);
+        if (dependency != null && !deferred(parameters.get(i))) {
+          visit(dependency, order, visiting, false);
+        }
+      }
+    }
+    if (bean.injected) {
+      for (Point point : wiring(bean.type).points) {
+        if (point.dependency != null && !deferred(point.field)) {
+          visit(point.dependency, order, visiting, true);
+        }
+      }
+      for (InjectMethod injectMethod : wiring(bean.type).injectMethods) {
+        final List<? extends VariableElement> parameters = injectMethod.method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+          final Bean dependency = injectMethod.dependencies.get(i);
+          if (dependency != null && !deferred(parameters.get(i))) {
+            visit(dependency, order, visiting, true);
+          }
+        }
+      }
+    }
+    visiting.remove(bean);
+    order.add(bean);
+  }
+
+  private void writeWiring(Wiring wiring) {
+    final String packageName = processingEnv.getElementUtils().getPackageOf(wiring.type).getQualifiedName().toString();
+    final String type = wiring.type.getQualifiedName().toString();
+    try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+            .createSourceFile(wiring.qualifiedName(), wiring.type).openWriter())) {
+      if (!packageName.isEmpty()) {
+        out.println("package " + packageName + ";");
+        out.println();
+      }
+      out.println("/**");
+      out.println(" * Generated by " + FactoryProcessor.class.getName() + ", do not edit.");
+      out.println(" */");
+      out.println("public final class " + wiring.simpleName() + " {");
+      out.println("  private " + wiring.simpleName() + "() {");
+      out.println("  }");
+      if (wiring.constructor != null) {
+        final List<String> parameters = new ArrayList<>();
+        final List<String> arguments = new ArrayList<>();
+        for (VariableElement parameter : wiring.constructor.getParameters()) {
+          parameters.add(parameter.asType() + " " + parameter.getSimpleName());
+          arguments.add(parameter.getSimpleName().toString());
+        }
+        out.println();
+        out.println("  public static " + type + " create(" + String.join(", ", parameters) + ") {");
+        out.println("    return new " + type + "(" + String.join(", ", arguments) + ");");
+        out.println("  }");
+      }
+      if (!wiring.points.isEmpty() || !wiring.injectMethods.isEmpty()) {
+        final List<String> parameters = new ArrayList<>();
+        parameters.add(type + " bean");
+        boolean environment = false;
+        boolean throwing = false;
+        for (Point point : wiring.points) {
+          if (point.dependency != null) {
+            parameters.add(erasure(point.field.asType()) + " " + point.field.getSimpleName());
+          } else {
+            environment = true;
+          }
+        }
+        for (int i = 0; i < wiring.injectMethods.size(); i++) {
+          final ExecutableElement method = wiring.injectMethods.get(i).method;
+          for (VariableElement parameter : method.getParameters()) {
+            parameters.add(parameter.asType() + " " + argument(i, parameter));
+          }
+          throwing |= !method.getThrownTypes().isEmpty();
+        }
+        if (environment) {
+          parameters.add("org.apex.Environment " + ENVIRONMENT);
+        }
+        out.println();
+        out.println("  @SuppressWarnings(\"unchecked\")");
+        out.println("  public static void inject(" + String.join(", ", parameters) + ")"
+                + (throwing ? " throws Exception {" : " {"));
+        for (Point point : wiring.points) {
+          final String value = point.dependency != null ? point.field.getSimpleName().toString() : point.value;
+          out.println("    bean." + point.access + value + (point.access.endsWith("(") ? ");" : ";"));
+        }
+        for (int i = 0; i < wiring.injectMethods.size(); i++) {
+          final ExecutableElement method = wiring.injectMethods.get(i).method;
+          final List<String> arguments = new ArrayList<>();
+          for (VariableElement parameter : method.getParameters()) {
+            arguments.add(argument(i, parameter));
+          }
+          out.println("    bean." + method.getSimpleName() + "(" + String.join(", ", arguments) + ");");
+        }
+        out.println("  }");
+      }
+      for (ExecutableElement method : wiring.methods) {
+        final List<String> parameters = new ArrayList<>();
+        final List<String> arguments = new ArrayList<>();
+        parameters.add(type + " bean");
+        for (VariableElement parameter : method.getParameters()) {
+          parameters.add(parameter.asType() + " " + parameter.getSimpleName());
+          arguments.add(parameter.getSimpleName().toString());
+        }
+        out.println();
+        out.println("  public static " + method.getReturnType() + " " + producer(method)
+                + "(" + String.join(", ", parameters) + ") {");
+        out.println("    return bean." + method.getSimpleName() + "(" + String.join(", ", arguments) + ");");
+        out.println("  }");
+      }
+      out.println("}");
+    } catch (IOException e) {
+      error(wiring.type, "Unable to write " + wiring.qualifiedName() + ": " + e.getMessage());
+    }
+  }
+
+  private void writeFactory(String factoryName, List<Bean> order) {
+    final int dot = factoryName.lastIndexOf('.');
+    final String packageName = dot > 0 ? factoryName.substring(0, dot) : "";
+    final String simpleName = factoryName.substring(dot + 1);
+    final Map<Bean, String> locals = new LinkedHashMap<>();
+    for (Bean bean : beans.values()) {
+      locals.put(bean, "bean" + locals.size());
+    }
+    try (PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(factoryName,
+            beans.values().stream().map(Bean::element).toArray(Element[]::new)).openWriter())) {
+      if (!packageName.isEmpty()) {
+        out.println("package " + packageName + ";");
+        out.println();
+      }
+      out.println("/**");
+      out.println(" * Generated by " + FactoryProcessor.class.getName() + ", do not edit.");
+      out.println(" */");
+      out.println("public final class " + simpleName + " extends org.apex.GeneratedFactory {");
+      out.println();
+      out.println("  @Override");
+      out.println("  protected void wire(org.apex.Apex apex) throws Exception {");
+      out.println("    final org.apex.Environment " + ENVIRONMENT + " = apex.environment();");
+      for (Bean bean : beans.values()) {
+        if (bean.method == null && !bean.constructed) {
+          out.println("    final " + bean.typeMirror + " " + locals.get(bean) + " = "
+                  + wiring(bean.type).qualifiedName() + ".create();");
+        }
+      }
+      for (Bean bean : order) {
+        if (bean.method != null) {
+          final List<String> arguments = new ArrayList<>();
+          arguments.add(locals.get(bean.factoryBean));
+          arguments.addAll(arguments(bean.method, bean.dependencies, locals));
+          out.println("    final " + bean.typeMirror + " " + locals.get(bean) + " = "
+                  + wiring(bean.factoryBean.type).qualifiedName() + "." + producer(bean.method)
+                  + "(" + String.join(", ", arguments) + ");");
+        } else if (bean.constructed) {
+          final List<String> arguments = arguments(wiring(bean.type).constructor, bean.dependencies, locals);
+          out.println("    final " + bean.typeMirror + " " + locals.get(bean) + " = "
+                  + wiring(bean.type).qualifiedName() + ".create(" + String.join(", ", arguments) + ");");
+        }
+        if (bean.injected) {
+          out.println("    " + inject(bean, locals));
+        }
+      }
+      for (Bean bean : order) {
+        out.println("    register(\"" + escape(bean.name) + "\", " + locals.get(bean) + ");");
+        if (bean.primary) {
+          out.println("    primary(\"" + escape(bean.name) + "\");");
+        }
+      }
+      out.println("  }");
+      out.println("}");
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+              "Unable to write " + factoryName + ": " + e.getMessage());
+    }
+  }
+
+  private String inject(Bean bean, Map<Bean, String> locals) {
+    final Wiring wiring = wiring(bean.type);
+    final List<String> arguments = new ArrayList<>();
+    arguments.add(locals.get(bean));
+    boolean environment = false;
+    for (Point point : wiring.points) {
+      if (point.dependency != null) {
+        arguments.add(value(point.field, point.dependency, locals));
+      } else {
+        environment = true;
+      }
+    }
+    for (InjectMethod injectMethod : wiring.injectMethods) {
+      arguments.addAll(arguments(injectMethod.method, injectMethod.dependencies, locals));
+    }
+    if (environment) {
+      arguments.add(ENVIRONMENT);
+    }
+    return wiring.qualifiedName() + ".inject(" + String.join(", ", arguments) + ");";
+  }
+
+  private List<String> arguments(ExecutableElement executable, List<Bean> dependencies, Map<Bean, String> locals) {
+    final List<String> arguments = new ArrayList<>();
+    final List<? extends VariableElement> parameters = executable.getParameters();
+    for (int i = 0; i < parameters.size(); i++) {
+      arguments.add(value(parameters.get(i), dependencies.get(i), locals));
+    }
+    return arguments;
+  }
+
+  /**
+   * Get the value passed for an injection point: the bean, an optional of it,
+   * or a lambda looking it up in the factory once it is registered
+   */
+  private String value(Element point, Bean dependency, Map<Bean, String> locals) {
+    final String wrapper = wrappers.get(point);
+    if (wrapper == null) {
+      return locals.get(dependency);
+    }
+    if (wrapper.equals(OPTIONAL)) {
+      return dependency == null ? OPTIONAL + ".empty()" : OPTIONAL + ".of(" + locals.get(dependency) + ")";
+    }
+    return "() -> getBean(\"" + escape(dependency.name) + "\")";
+  }
+
+  /**
+   * Name the parameter of an inject method in the generated inject method,
+   * unique across fields and the other inject methods
+   */
+  private static String argument(int methodIndex, VariableElement parameter) {
+    return "method" + methodIndex + "$" + parameter.getSimpleName();
+  }
+
+  private static String producer(ExecutableElement method) {
+    final String name = method.getSimpleName().toString();
+    return "produce" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+
+  private Wiring wiring(TypeElement type) {
+    return wirings.computeIfAbsent(binaryName(type), name -> new Wiring(type));
+  }
+
+  private boolean isBean(TypeElement typeElement) {
+    for (AnnotationMirror mirror : typeElement.getAnnotationMirrors()) {
+      final String name = name(mirror);
+      if (name.equals(SINGLETON) || name.equals(CONFIG_BEAN) || name.equals(PROPERTY_BEAN)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Report the beans in a scope other than the singleton scope, such as
+   * prototype, pooled, thread or request beans, which are created on demand
+   */
+  private void singleton(Element element) {
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      if (!name(mirror).equals(SINGLETON) && annotation(mirror.getAnnotationType().asElement(), "Scope") != null) {
+        error(element, "Beans in the " + mirror.getAnnotationType().asElement().getSimpleName()
+                + " scope are created on demand and cannot be part of the generated factory");
+      }
+    }
+  }
+
+  private void conditional(Element element) {
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      if (name(mirror).startsWith(ANNOTATION + "ConditionalOn")) {
+        // once per bean, however many conditions it has
+        error(element, "Conditional beans are evaluated at startup and cannot be part of the generated factory");
+        return;
+      }
+    }
+  }
+
+  private ExecutableElement constructor(TypeElement typeElement) {
+    if (typeElement.getNestingKind().isNested() && !typeElement.getModifiers().contains(Modifier.STATIC)) {
+      return null;
+    }
+    ExecutableElement noArg = null;
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(typeElement.getEnclosedElements())) {
+      if (constructor.getModifiers().contains(Modifier.PRIVATE)) {
+        continue;
+      }
+      if (annotation(constructor, "Inject") != null) {
+        return constructor;
+      }
+      if (constructor.getParameters().isEmpty()) {
+        noArg = constructor;
+      }
+    }
+    return noArg;
+  }
+
+  private AnnotationMirror annotation(Element element, String simpleName) {
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      if (name(mirror).equals(ANNOTATION + simpleName)) {
+        return mirror;
+      }
+    }
+    return null;
+  }
+
+  private static String stringValue(AnnotationMirror mirror) {
+    if (mirror == null) {
+      return null;
+    }
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+            : mirror.getElementValues().entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals("value")) {
+        return String.valueOf(entry.getValue().getValue());
+      }
+    }
+    return "";
+  }
+
+  private String name(AnnotationMirror mirror) {
+    return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+  }
+
+  private boolean isType(TypeMirror type, String qualifiedName) {
+    final Element element = types().asElement(erasure(type));
+    return element instanceof TypeElement && ((TypeElement) element).getQualifiedName().contentEquals(qualifiedName);
+  }
+
+  private TypeMirror erasure(TypeMirror type) {
+    return types().erasure(type);
+  }
+
+  private String binaryName(TypeMirror type) {
+    final Element element = types().asElement(type);
+    return element instanceof TypeElement ? binaryName((TypeElement) element) : type.toString();
+  }
+
+  private String binaryName(TypeElement typeElement) {
+    return processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+  }
+
+  private Types types() {
+    return processingEnv.getTypeUtils();
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  private void error(Element element, String message) {
+    failed = true;
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+
+  private void warning(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+  }
+
+  /**
+   * A bean of the generated factory, created by its constructor or by a bean method
+   */
+  private static class Bean {
+    final String name;
+    final TypeMirror typeMirror;
+    final TypeElement type;
+    final ExecutableElement method;
+    final List<Bean> dependencies = new ArrayList<>();
+    final Set<String> qualifiers = new LinkedHashSet<>();
+    Bean factoryBean;
+    boolean primary;
+    boolean injected;
+    boolean constructed;
+
+    Bean(String name, TypeMirror typeMirror, TypeElement type, ExecutableElement method) {
+      this.name = name;
+      this.typeMirror = typeMirror;
+      this.type = type;
+      this.method = method;
+    }
+
+    Bean factoryBean(Bean factoryBean) {
+      this.factoryBean = factoryBean;
+      return this;
+    }
+
+    Element element() {
+      return method != null ? method : type;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /**
+   * The generated wiring class of a type: its constructor call, injection
+   * points, inject methods and bean methods
+   */
+  private static class Wiring {
+    final TypeElement type;
+    final List<Point> points = new ArrayList<>();
+    final List<ExecutableElement> methods = new ArrayList<>();
+    final List<InjectMethod> injectMethods = new ArrayList<>();
+    ExecutableElement constructor;
+    boolean resolved;
+
+    Wiring(TypeElement type) {
+      this.type = type;
+    }
+
+    String simpleName() {
+      final StringBuilder name = new StringBuilder(type.getSimpleName());
+      for (Element enclosing = type.getEnclosingElement(); enclosing.getKind().isClass()
+              || enclosing.getKind().isInterface(); enclosing = enclosing.getEnclosingElement()) {
+        name.insert(0, enclosing.getSimpleName() + "_");
+      }
+      return name + WIRING_SUFFIX;
+    }
+
+    String qualifiedName() {
+      Element element = type;
+      while (element.getKind() != ElementKind.PACKAGE) {
+        element = element.getEnclosingElement();
+      }
+      final String packageName = element.toString();
+      return packageName.isEmpty() ? simpleName() : packageName + "." + simpleName();
+    }
+  }
+
+  /**
+   * An Inject method called by the wiring class, with the beans passed to it
+   */
+  private static class InjectMethod {
+    final ExecutableElement method;
+    final List<Bean> dependencies = new ArrayList<>();
+
+    InjectMethod(ExecutableElement method) {
+      this.method = method;
+    }
+  }
+
+  /**
+   * A field written by the wiring class, with a bean or a value read from the environment
+   */
+  private static class Point {
+    final VariableElement field;
+    final Bean dependency;
+    final String value;
+    String access;
+
+    Point(VariableElement field, Bean dependency, String value) {
+      this.field = field;
+      this.dependency = dependency;
+      this.value = value;
+    }
+  }
+}
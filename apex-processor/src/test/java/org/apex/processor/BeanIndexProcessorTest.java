@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex.processor;
+
+import org.apex.Apex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles sample beans with the {@link BeanIndexProcessor} and checks the
+ * annotations and interfaces indexed for them
+ *
+ * @author WangYi
+ * @since 2020/11/20
+ */
+public class BeanIndexProcessorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testIndex() throws Exception {
+    Properties index = compile(
+            "sample/Repository.java",
+            "package sample;\n"
+                    + "public interface Repository {}\n",
+            "sample/SqlRepository.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class SqlRepository implements Repository {}\n",
+            "sample/Plain.java",
+            "package sample;\n"
+                    + "public class Plain {}\n");
+    List<String> stereotypes = stereotypes(index, "sample.SqlRepository");
+    assertTrue(stereotypes.contains("org.apex.annotation.Singleton"));
+    assertTrue(stereotypes.contains("sample.Repository"));
+    assertNull(index.getProperty("sample.Plain"));
+  }
+
+  @Test
+  public void testComposedAnnotation() throws Exception {
+    Properties index = compile(
+            "sample/Service.java",
+            "package sample;\n"
+                    + "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public @interface Service {}\n",
+            "sample/UserService.java",
+            "package sample;\n"
+                    + "@Service\n"
+                    + "public class UserService {}\n");
+    List<String> stereotypes = stereotypes(index, "sample.UserService");
+    assertTrue(stereotypes.contains("sample.Service"));
+    // the annotation of the composed one, the way the scan matches it
+    assertTrue(stereotypes.contains("org.apex.annotation.Singleton"));
+    assertFalse(stereotypes.contains("java.lang.annotation.Retention"));
+  }
+
+  @Test
+  public void testInheritedAnnotation() throws Exception {
+    Properties index = compile(
+            "sample/Managed.java",
+            "package sample;\n"
+                    + "@java.lang.annotation.Inherited\n"
+                    + "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                    + "public @interface Managed {}\n",
+            "sample/AbstractBean.java",
+            "package sample;\n"
+                    + "@Managed\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public abstract class AbstractBean {}\n",
+            "sample/ConcreteBean.java",
+            "package sample;\n"
+                    + "public class ConcreteBean extends AbstractBean {}\n");
+    // @Singleton is not @Inherited, so only @Managed is
+    assertEquals(Collections.singletonList("sample.Managed"), stereotypes(index, "sample.ConcreteBean"));
+    assertFalse(index.containsKey("sample.AbstractBean"));
+  }
+
+  private static List<String> stereotypes(Properties index, String className) {
+    String value = index.getProperty(className);
+    assertTrue(className + " is not indexed", value != null);
+    return Arrays.asList(value.split(","));
+  }
+
+  /**
+   * Compile the sources, given as pairs of path and content, and read the
+   * index written by the processor
+   */
+  private Properties compile(String... files) throws IOException, URISyntaxException {
+    final Path root = folder.newFolder().toPath();
+    final Path classes = Files.createDirectories(root.resolve("classes"));
+    final List<File> sourceFiles = new ArrayList<>();
+    for (int i = 0; i < files.length; i += 2) {
+      final Path path = root.resolve("input").resolve(files[i]);
+      Files.createDirectories(path.getParent());
+      Files.write(path, files[i + 1].getBytes(StandardCharsets.UTF_8));
+      sourceFiles.add(path.toFile());
+    }
+    final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final List<String> options = Arrays.asList(
+            "-classpath", Paths.get(Apex.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString(),
+            "-d", classes.toString());
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+      final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+              options, null, fileManager.getJavaFileObjectsFromFiles(sourceFiles));
+      task.setProcessors(Collections.singletonList(new BeanIndexProcessor()));
+      assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+    }
+    final Properties index = new Properties();
+    try (InputStream inputStream = Files.newInputStream(classes.resolve(BeanIndexProcessor.INDEX_LOCATION))) {
+      index.load(inputStream);
+    }
+    return index;
+  }
+}
@@ -0,0 +1,346 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex.processor;
+
+import org.apex.Apex;
+import org.apex.GeneratedFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles sample beans with the {@link FactoryProcessor} and checks the
+ * generated factory, or the errors reported instead of it
+ *
+ * @author WangYi
+ * @since 2020/11/19
+ */
+public class FactoryProcessorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testGeneratedFactory() throws Exception {
+    Compilation compilation = compile(
+            "sample/Repository.java",
+            "package sample;\n"
+                    + "public interface Repository {}\n",
+            "sample/SqlRepository.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class SqlRepository implements Repository {}\n",
+            "sample/Service.java",
+            "package sample;\n"
+                    + "import org.apex.annotation.Inject;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Service {\n"
+                    + "  final Repository repository;\n"
+                    + "  @Inject Clock clock;\n"
+                    + "  @Inject @org.apex.annotation.Named(\"backup\") Clock backup;\n"
+                    + "  @Inject Service(Repository repository) { this.repository = repository; }\n"
+                    + "}\n",
+            "sample/Clock.java",
+            "package sample;\n"
+                    + "public class Clock {\n"
+                    + "  final String zone;\n"
+                    + "  Clock(String zone) { this.zone = zone; }\n"
+                    + "}\n",
+            "sample/ClockConfig.java",
+            "package sample;\n"
+                    + "import org.apex.annotation.Bean;\n"
+                    + "@org.apex.annotation.ConfigBean\n"
+                    + "public class ClockConfig {\n"
+                    + "  @Bean @org.apex.annotation.Primary public Clock clock() { return new Clock(\"UTC\"); }\n"
+                    + "  @Bean public Clock backup() { return new Clock(\"GMT\"); }\n"
+                    + "}\n");
+    assertTrue(compilation.errors().toString(), compilation.success);
+
+    String factory = compilation.generated("sample/AppFactory.java");
+    // bean methods returning the same type are registered by method name
+    assertTrue(factory, factory.contains("register(\"clock\", "));
+    assertTrue(factory, factory.contains("register(\"backup\", "));
+    assertTrue(factory, factory.contains("primary(\"clock\");"));
+    assertTrue(factory, factory.contains("register(\"sample.Service\", "));
+    assertNotNull(compilation.generated("sample/Service_ApexWiring.java"));
+
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[]{compilation.classes.toUri().toURL()},
+            getClass().getClassLoader())) {
+      GeneratedFactory generated = (GeneratedFactory) classLoader.loadClass("sample.AppFactory")
+              .getDeclaredConstructor().newInstance();
+      generated.init(Apex.of());
+      Class<?> clockClass = classLoader.loadClass("sample.Clock");
+      Object service = generated.getBean(classLoader.loadClass("sample.Service"));
+      assertSame(generated.getBean("sample.SqlRepository"), field(service, "repository"));
+      assertSame(generated.getBean("clock"), field(service, "clock"));
+      assertSame(generated.getBean("backup"), field(service, "backup"));
+      assertEquals("GMT", field(field(service, "backup"), "zone"));
+      assertSame(generated.getBean("clock"), generated.getBean(clockClass));
+    }
+  }
+
+  @Test
+  public void testUnresolvedInjectionPoint() throws Exception {
+    Compilation compilation = compile(
+            "sample/Service.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Service {\n"
+                    + "  @org.apex.annotation.Inject Runnable task;\n"
+                    + "}\n");
+    assertFalse(compilation.success);
+    assertEquals(Arrays.asList("Unresolved injection point, no bean of type java.lang.Runnable"),
+            compilation.errors());
+    assertFalse(Files.exists(compilation.sources.resolve("sample/AppFactory.java")));
+  }
+
+  @Test
+  public void testQualifierMatchingNoCandidate() throws Exception {
+    Compilation compilation = compile(
+            "sample/Task.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Task implements Runnable {\n"
+                    + "  public void run() {}\n"
+                    + "}\n",
+            "sample/Service.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Service {\n"
+                    + "  @org.apex.annotation.Inject @org.apex.annotation.Named(\"other\") Runnable task;\n"
+                    + "}\n");
+    assertEquals(Arrays.asList("Unresolved injection point, no bean of type java.lang.Runnable"),
+            compilation.errors());
+  }
+
+  @Test
+  public void testAmbiguousInjectionPoint() throws Exception {
+    Compilation compilation = compile(
+            "sample/First.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class First implements Runnable {\n"
+                    + "  public void run() {}\n"
+                    + "}\n",
+            "sample/Second.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Second implements Runnable {\n"
+                    + "  public void run() {}\n"
+                    + "}\n",
+            "sample/Service.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Service {\n"
+                    + "  @org.apex.annotation.Inject Runnable task;\n"
+                    + "}\n");
+    assertEquals(1, compilation.errors().size());
+    assertTrue(compilation.errors().get(0), compilation.errors().get(0).startsWith("Ambiguous injection point"));
+  }
+
+  @Test
+  public void testUnsupportedBeans() throws Exception {
+    Compilation compilation = compile(
+            "sample/Fallback.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "@org.apex.annotation.ConditionalOnMissingBean\n"
+                    + "@org.apex.annotation.ConditionalOnClass(\"sample.Other\")\n"
+                    + "public class Fallback {}\n",
+            "sample/Service.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Service {\n"
+                    + "  @org.apex.annotation.Inject private Fallback fallback;\n"
+                    + "}\n");
+    // a bean is reported once however many conditions it has
+    assertEquals(Arrays.asList(
+            "Conditional beans are evaluated at startup and cannot be part of the generated factory",
+            "A private or final field of the generated factory needs a non-private setter setFallback"),
+            compilation.errors());
+  }
+
+  @Test
+  public void testInjectMethodSeesInjectedCollaborator() throws Exception {
+    Compilation compilation = compile(
+            "sample/Starter.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Starter {\n"
+                    + "  Object seen;\n"
+                    + "  @org.apex.annotation.Inject void init(Engine engine) { seen = engine.fuel; }\n"
+                    + "}\n",
+            "sample/Engine.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Engine {\n"
+                    + "  @org.apex.annotation.Inject Fuel fuel;\n"
+                    + "  @org.apex.annotation.Inject Starter starter;\n"
+                    + "}\n",
+            "sample/Fuel.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Fuel {}\n");
+    // the cycle between Starter and Engine goes through fields and methods only
+    assertTrue(compilation.errors().toString(), compilation.success);
+
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[]{compilation.classes.toUri().toURL()},
+            getClass().getClassLoader())) {
+      GeneratedFactory generated = (GeneratedFactory) classLoader.loadClass("sample.AppFactory")
+              .getDeclaredConstructor().newInstance();
+      generated.init(Apex.of());
+      Object starter = generated.getBean("sample.Starter");
+      // the engine was injected before it was handed to the inject method
+      assertNotNull(field(starter, "seen"));
+      assertSame(generated.getBean("sample.Fuel"), field(starter, "seen"));
+      assertSame(starter, field(generated.getBean("sample.Engine"), "starter"));
+    }
+  }
+
+  @Test
+  public void testConstructorCycle() throws Exception {
+    Compilation compilation = compile(
+            "sample/First.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class First {\n"
+                    + "  @org.apex.annotation.Inject First(Second second) {}\n"
+                    + "}\n",
+            "sample/Second.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Second {\n"
+                    + "  @org.apex.annotation.Inject First first;\n"
+                    + "}\n");
+    assertFalse(compilation.success);
+    assertTrue(compilation.errors().toString(),
+            compilation.errors().get(0).startsWith("Bean method or constructor dependency cycle"));
+  }
+
+  @Test
+  public void testWithoutFactoryOption() throws Exception {
+    Compilation compilation = compile(false,
+            "sample/Service.java",
+            "package sample;\n"
+                    + "@org.apex.annotation.Singleton\n"
+                    + "public class Service {}\n");
+    assertTrue(compilation.success);
+    assertFalse(Files.exists(compilation.sources.resolve("sample/AppFactory.java")));
+  }
+
+  private Compilation compile(String... files) throws IOException, URISyntaxException {
+    return compile(true, files);
+  }
+
+  /**
+   * Compile the sources, given as pairs of path and content, with the
+   * processor generating {@code sample.AppFactory}
+   */
+  private Compilation compile(boolean factory, String... files) throws IOException, URISyntaxException {
+    final Path root = folder.newFolder().toPath();
+    final Path input = Files.createDirectories(root.resolve("input"));
+    final List<File> sourceFiles = new ArrayList<>();
+    for (int i = 0; i < files.length; i += 2) {
+      final Path path = input.resolve(files[i]);
+      Files.createDirectories(path.getParent());
+      Files.write(path, files[i + 1].getBytes(StandardCharsets.UTF_8));
+      sourceFiles.add(path.toFile());
+    }
+    final Compilation compilation = new Compilation(Files.createDirectories(root.resolve("sources")),
+            Files.createDirectories(root.resolve("classes")));
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final List<String> options = new ArrayList<>(Arrays.asList(
+            "-classpath", Paths.get(Apex.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString(),
+            "-s", compilation.sources.toString(),
+            "-d", compilation.classes.toString()));
+    if (factory) {
+      options.add("-A" + FactoryProcessor.FACTORY_OPTION + "=sample.AppFactory");
+    }
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+      final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, compilation.diagnostics,
+              options, null, fileManager.getJavaFileObjectsFromFiles(sourceFiles));
+      task.setProcessors(Arrays.asList(new FactoryProcessor()));
+      compilation.success = task.call();
+    }
+    return compilation;
+  }
+
+  private static Object field(Object target, String name) throws ReflectiveOperationException {
+    final java.lang.reflect.Field field = target.getClass().getDeclaredField(name);
+    field.setAccessible(true);
+    return field.get(target);
+  }
+
+  private static class Compilation {
+    final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    final Path sources;
+    final Path classes;
+    boolean success;
+
+    Compilation(Path sources, Path classes) {
+      this.sources = sources;
+      this.classes = classes;
+    }
+
+    List<String> errors() {
+      final List<String> errors = new ArrayList<>();
+      for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+        if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+          errors.add(diagnostic.getMessage(Locale.ROOT));
+        }
+      }
+      return errors;
+    }
+
+    String generated(String path) throws IOException {
+      return new String(Files.readAllBytes(sources.resolve(path)), StandardCharsets.UTF_8);
+    }
+  }
+}
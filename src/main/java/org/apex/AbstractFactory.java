@@ -25,64 +25,626 @@ package org.apex;
 
 import org.apache.commons.lang3.Validate;
 import org.apex.exception.BeanInstantiationException;
+import org.apex.exception.QualifierNotUniqueException;
+import org.apex.injector.MethodInjector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.ServiceLoader;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * @author WangYi
  * @since 2020/6/22
  */
-public abstract class AbstractFactory implements ApexFactory {
+public abstract class AbstractFactory implements ApexFactory, BeanDefinitionRegistry {
   private static final Logger log = LoggerFactory.getLogger(AbstractFactory.class);
 
+  protected final Map<String, BeanDefinition> beanDefinitionMap = new ConcurrentHashMap<>(64);
   protected final Map<String, KlassInfo> klassInfoMap = new ConcurrentHashMap<>(64);
   protected final Map<String, Object> instanceMap = new ConcurrentHashMap<>();
   protected final ServiceLoader<Injector> injectors = ServiceLoader.load(Injector.class);
+  protected volatile WiringDescriptor wiringDescriptor;
+  private final TypeIndex typeIndex = new TypeIndex();
+  private final Set<String> currentlyInCreation = ConcurrentHashMap.newKeySet();
+  private final Object creationLock = new Object();
+  private final Map<String, Object> creationLocks = new ConcurrentHashMap<>();
+  private final ThreadLocal<Set<String>> prototypesInCreation = ThreadLocal.withInitial(HashSet::new);
+  private final Map<String, BeanPool<?>> pools = new ConcurrentHashMap<>();
+  private final Map<Class<? extends Annotation>, BeanScope> scopes = new ConcurrentHashMap<>();
+  private final Map<String, ScopedBean> scopedBeans = new ConcurrentHashMap<>();
+  private final AtomicInteger scopedBeanIndex = new AtomicInteger();
+  private final Map<String, Integer> scopedBeanIndexes = new ConcurrentHashMap<>();
+  private volatile Map<Class<?>, Map<String, Candidate>> candidates = new ConcurrentHashMap<>(64);
+  private final Map<String, BeanSlot> slots = new ConcurrentHashMap<>(64);
+  private final ClassValue<SlotRef> slotsByClass = new ClassValue<SlotRef>() {
+    @Override
+    protected SlotRef computeValue(Class<?> type) {
+      return new SlotRef();
+    }
+  };
+
+  protected AbstractFactory() {
+    for (BeanScope scope : ServiceLoader.load(BeanScope.class)) {
+      registerScope(scope);
+    }
+  }
 
   public Map<String, Object> instances() {
     return instanceMap;
   }
 
-  protected <T> T getInjectBean(Class<T> cls) {
-    Validate.notNull(cls, "cls must not be null");
-    Object obj = instanceMap.get(cls.getName());
-    return getInjectBean(cls.isAssignableFrom(obj.getClass()) ? cls.cast(obj) : obj);
+  /**
+   * Register the strategy of a scope annotation, replacing the one loaded
+   * for the same annotation if any. Beans already created are not affected.
+   *
+   * @param scope scope strategy
+   */
+  public void registerScope(BeanScope scope) {
+    Validate.notNull(scope, "scope must not be null");
+    Validate.notNull(scope.annotation(), "scope annotation must not be null");
+    final BeanScope previous = scopes.put(scope.annotation(), scope);
+    if (previous != null && previous != scope) {
+      log.warn("Overriding scope {} with {}", previous, scope);
+      for (ScopedBean scopedBean : scopedBeans.values()) {
+        if (scopedBean.scope() == previous) {
+          retire(scopedBeans.remove(scopedBean.name()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the registered scope strategy of the type, for example to open a
+   * request of {@link org.apex.scope.RequestScope}
+   *
+   * @param type scope strategy class
+   * @param <S>  scope strategy type
+   * @return scope strategy, or null if none is registered
+   */
+  public <S extends BeanScope> S scope(Class<S> type) {
+    Validate.notNull(type, "type must not be null");
+    for (BeanScope scope : scopes.values()) {
+      if (type.isInstance(scope)) {
+        return type.cast(scope);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Whether a bean is a single shared instance, created once and registered:
+   * neither a prototype nor in a scope that has a strategy
+   *
+   * @param beanDefinition bean definition
+   * @return true for a singleton
+   */
+  public boolean shared(BeanDefinition beanDefinition) {
+    Validate.notNull(beanDefinition, "beanDefinition must not be null");
+    return !beanDefinition.prototype() && !scopes.containsKey(beanDefinition.scope());
+  }
+
+  @Override
+  public void registerBeanDefinition(BeanDefinition beanDefinition) {
+    Validate.notNull(beanDefinition, "beanDefinition must not be null");
+    final BeanDefinition previous = beanDefinitionMap.put(beanDefinition.name(), beanDefinition);
+    if (previous != null && previous != beanDefinition) {
+      log.warn("Overriding bean definition {} with {}", previous, beanDefinition);
+      pools.remove(beanDefinition.name());
+      retire(scopedBeans.remove(beanDefinition.name()));
+    }
+    if (!instanceMap.containsKey(beanDefinition.name())) {
+      typeIndex.add(beanDefinition.name(), beanDefinition.beanClass());
+    }
+    candidatesChanged();
+  }
+
+  @Override
+  public BeanDefinition getBeanDefinition(String beanName) {
+    Validate.notNull(beanName, "beanName must not be null");
+    return beanDefinitionMap.get(beanName);
+  }
+
+  @Override
+  public boolean containsBeanDefinition(String beanName) {
+    Validate.notNull(beanName, "beanName must not be null");
+    return beanDefinitionMap.containsKey(beanName);
+  }
+
+  @Override
+  public Collection<BeanDefinition> beanDefinitions() {
+    return Collections.unmodifiableCollection(beanDefinitionMap.values());
+  }
+
+  @Override
+  public void removeBeanDefinition(String beanName) {
+    Validate.notNull(beanName, "beanName must not be null");
+    beanDefinitionMap.remove(beanName);
+    pools.remove(beanName);
+    retire(scopedBeans.remove(beanName));
+    if (!instanceMap.containsKey(beanName)) {
+      typeIndex.remove(beanName);
+    }
+    candidatesChanged();
   }
 
   protected <T> T getInjectBean(Object obj) {
+    return getInjectBean(obj, null);
+  }
+
+  /**
+   * Run the injectors on an object, marking its slot injected once its
+   * fields and values are, before its inject methods are invoked
+   */
+  private <T> T getInjectBean(Object obj, BeanSlot slot) {
     Validate.notNull(obj, "obj must not be null");
+    KlassInfo klassInfo = klassInfoMap.get(obj.getClass().getName());
+    if (klassInfo == null || klassInfo.target() != obj) {
+      klassInfo = KlassInfo.create(obj);
+    }
     try {
+      final InjectContext injectContext = InjectContext.create(klassInfo, instanceMap, this);
       for (final Injector next : injectors) {
-        next.inject(InjectContext.create(
-                klassInfoMap.getOrDefault(obj.getClass().getName(),
-                        KlassInfo.create(obj)), instanceMap));
+        if (slot != null && next instanceof MethodInjector) {
+          slot.state = BeanState.INJECTED;
+        }
+        next.inject(injectContext);
       }
       return (T) obj;
+    } catch (BeanInstantiationException e) {
+      throw e;
     } catch (Exception e) {
-      throw new BeanInstantiationException("obj can't be injected");
+      throw new BeanInstantiationException("obj can't be injected", e);
+    }
+  }
+
+  /**
+   * Inject a bean again, for example after the beans or properties it
+   * depends on were replaced. Beans are injected once when they are created
+   * and lookups never inject, so this is the only way to refresh one.
+   *
+   * @param bean bean, registered or not
+   * @param <T>  bean type
+   * @return the bean
+   */
+  public <T> T reinject(T bean) {
+    Validate.notNull(bean, "bean must not be null");
+    return getInjectBean(bean);
+  }
+
+  /**
+   * Get the lifecycle state of a bean
+   *
+   * @param beanName bean name
+   * @return state, or null if neither a definition nor an instance is registered under the name
+   */
+  public BeanState beanState(String beanName) {
+    Validate.notNull(beanName, "beanName must not be null");
+    final BeanSlot slot = slots.get(beanName);
+    if (slot != null) {
+      return slot.state;
+    }
+    return beanDefinitionMap.containsKey(beanName) ? BeanState.DEFINED : null;
+  }
+
+  /**
+   * Get a bean by name. A ready bean is a single map read. A bean that has a
+   * definition but no instance yet, such as a lazy bean, is created and
+   * injected on first use, under the creation lock of the factory so that
+   * threads wiring beans that depend on each other don't deadlock; a bean
+   * being wired by another thread is waited for, while the thread wiring it
+   * gets it as is to resolve cycles. A
+   * prototype bean is created and injected anew on every call, a bean in a
+   * scope that has a strategy is looked up in its scope.
+   *
+   * @param beanName bean name
+   * @return bean, or null if no bean is registered under the name
+   */
+  protected Object resolveBean(String beanName) {
+    final BeanSlot slot = slots.get(beanName);
+    if (slot != null && slot.state == BeanState.READY) {
+      return slot.bean;
+    }
+    final BeanDefinition beanDefinition = beanDefinitionMap.get(beanName);
+    if (beanDefinition == null) {
+      return slot != null ? slot.bean : null;
+    }
+    if (slot == null) {
+      if (beanDefinition.prototype()) {
+        return createPrototype(beanDefinition);
+      }
+      final BeanScope scope = scopes.get(beanDefinition.scope());
+      if (scope != null) {
+        return scope.get(scopedBean(beanDefinition, scope));
+      }
+    }
+    synchronized (creationLock(beanName)) {
+      final BeanSlot created = slots.get(beanName);
+      if (created != null) {
+        // ready, or being wired by this thread further up the stack
+        return created.bean;
+      }
+      if (!currentlyInCreation.add(beanName)) {
+        throw new BeanInstantiationException("Circular dependency while creating " + beanName
+                + ", constructor and factory method arguments can't be circular");
+      }
+      final Object target;
+      try {
+        target = createBean(beanDefinition);
+      } finally {
+        currentlyInCreation.remove(beanName);
+      }
+      // publish before injecting so that circular references resolve
+      registerInstance(beanName, target);
+      injectInstance(beanName, target);
+      return target;
+    }
+  }
+
+  /**
+   * Give each group of beans a creation lock of its own, rather than the
+   * creation lock of the factory, so that disjoint groups are wired
+   * concurrently. The locks are assigned before any group is wired and kept
+   * afterwards, so every thread creating a bean synchronizes on the same lock.
+   *
+   * @param groups bean names by group, such as the components of the {@link DependencyGraph}
+   */
+  protected void assignCreationLocks(Collection<? extends Collection<String>> groups) {
+    for (Collection<String> group : groups) {
+      final Object lock = new Object();
+      for (String beanName : group) {
+        creationLocks.put(beanName, lock);
+      }
+    }
+  }
+
+  /**
+   * Create and inject a group of singletons that depend on no other bean
+   * being created, such as a component of the {@link DependencyGraph} whose
+   * dependencies are ready, under the creation lock of the group
+   *
+   * @param beanNames bean names, in wiring order
+   * @see #assignCreationLocks(Collection)
+   */
+  protected void resolveBeans(List<String> beanNames) {
+    if (beanNames.isEmpty()) {
+      return;
+    }
+    synchronized (creationLock(beanNames.get(0))) {
+      for (String beanName : beanNames) {
+        resolveBean(beanName);
+      }
+    }
+  }
+
+  private Object creationLock(String beanName) {
+    return creationLocks.getOrDefault(beanName, creationLock);
+  }
+
+  /**
+   * Get the handle of a scoped bean, created once per definition so that
+   * scope lookups don't allocate
+   */
+  private ScopedBean scopedBean(BeanDefinition beanDefinition, BeanScope scope) {
+    final ScopedBean scopedBean = scopedBeans.get(beanDefinition.name());
+    if (scopedBean != null && !scopedBean.retired() && scopedBean.beanDefinition() == beanDefinition) {
+      return scopedBean;
+    }
+    return scopedBeans.compute(beanDefinition.name(), (name, current) -> {
+      if (current != null && !current.retired() && current.beanDefinition() == beanDefinition) {
+        return current;
+      }
+      retire(current);
+      // one index per name, or scopes would grow with every redefinition
+      final int index = scopedBeanIndexes.computeIfAbsent(name, key -> scopedBeanIndex.getAndIncrement());
+      return new ScopedBean(beanDefinition, index, scope, () -> createPrototype(beanDefinition));
+    });
+  }
+
+  /**
+   * Create and inject a bean that is not a singleton, without registering
+   * it. The definition, its constructor and its injection plan are resolved
+   * once and cached, so only the instance is new.
+   */
+  private Object createPrototype(BeanDefinition beanDefinition) {
+    final Set<String> inCreation = prototypesInCreation.get();
+    if (!inCreation.add(beanDefinition.name())) {
+      throw new BeanInstantiationException("Circular dependency while creating "
+              + beanDefinition.name() + ", which is not a singleton, use a Provider to break it");
+    }
+    try {
+      final Object bean = createBean(beanDefinition);
+      getInjectBean(bean);
+      return bean;
+    } finally {
+      inCreation.remove(beanDefinition.name());
+    }
+  }
+
+  /**
+   * Get the pool of a {@link org.apex.annotation.Pooled} bean
+   *
+   * @param cls bean class
+   * @param <T> bean type
+   * @return pool, shared by all callers until the bean definition changes
+   * @throws IllegalArgumentException if the bean is not pooled
+   */
+  public <T> BeanPool<T> pool(Class<T> cls) {
+    Validate.notNull(cls, "cls must not be null");
+    return pool(cls.getName());
+  }
+
+  /**
+   * Get the pool of a {@link org.apex.annotation.Pooled} bean
+   *
+   * @param beanName bean name
+   * @param <T>      bean type
+   * @return pool, shared by all callers until the bean definition changes
+   * @throws IllegalArgumentException if the bean is not pooled
+   */
+  @SuppressWarnings("unchecked")
+  public <T> BeanPool<T> pool(String beanName) {
+    Validate.notNull(beanName, "beanName must not be null");
+    final BeanDefinition beanDefinition = beanDefinitionMap.get(beanName);
+    Validate.isTrue(beanDefinition != null && beanDefinition.poolSize() > 0, "%s is not a pooled bean", beanName);
+    return (BeanPool<T>) pools.computeIfAbsent(beanName, name -> new BeanPool<>(name,
+            beanDefinition.poolSize(), () -> (T) createPrototype(beanDefinition)));
+  }
+
+  /**
+   * Inject a registered instance and mark it ready
+   */
+  private void injectInstance(String beanName, Object bean) {
+    final BeanSlot slot = slots.get(beanName);
+    if (slot == null || slot.bean != bean) {
+      getInjectBean(bean);
+      return;
+    }
+    getInjectBean(bean, slot);
+    slot.state = BeanState.READY;
+  }
+
+  /**
+   * Create a bean from its definition, through its {@link org.apex.annotation.Inject}
+   * constructor, its default constructor or by invoking its factory method.
+   * Constructor and factory method arguments are resolved from the registry.
+   * The bean is neither registered nor field injected.
+   *
+   * @param beanDefinition bean definition
+   * @return new bean
+   */
+  protected Object createBean(BeanDefinition beanDefinition) {
+    final Method factoryMethod = beanDefinition.factoryMethod();
+    final List<BeanDefinition.Dependency> dependencies = beanDefinition.dependencies();
+    if (factoryMethod == null) {
+      final Constructor<?> constructor = beanDefinition.constructor();
+      if (constructor == null) {
+        return ReflectionHelper.newInstance(beanDefinition.beanClass());
+      }
+      // the constructor parameters come first
+      final Object[] args = new Object[constructor.getParameterCount()];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = resolveDependency(dependencies.get(i));
+        if (args[i] == null) {
+          throw new BeanInstantiationException("No bean found for constructor parameter "
+                  + dependencies.get(i) + " of " + beanDefinition.name());
+        }
+      }
+      return ReflectionHelper.newInstance(constructor, args);
+    }
+    final Object factoryBean = resolveBean(beanDefinition.factoryBean());
+    if (factoryBean == null) {
+      throw new BeanInstantiationException("Factory bean " + beanDefinition.factoryBean()
+              + " of " + beanDefinition.name() + " is not registered");
+    }
+    // the first dependency is the factory bean itself
+    final Object[] args = new Object[dependencies.size() - 1];
+    for (int i = 0; i < args.length; i++) {
+      args[i] = resolveDependency(dependencies.get(i + 1));
+      if (args[i] == null) {
+        throw new BeanInstantiationException("No bean found for bean method parameter "
+                + dependencies.get(i + 1) + " of " + beanDefinition.name());
+      }
+    }
+    try {
+      final Object bean = factoryMethod.invoke(factoryBean, args);
+      if (bean == null) {
+        throw new BeanInstantiationException(factoryMethod + " returned null");
+      }
+      return bean;
+    } catch (IllegalAccessException e) {
+      throw new BeanInstantiationException("Illegal Access '" + factoryMethod + "'", e);
+    } catch (InvocationTargetException e) {
+      throw new BeanInstantiationException("Exception occurred when invoking '"
+              + factoryMethod + "'", e.getTargetException());
+    }
+  }
+
+  /**
+   * Resolve a dependency by qualifier, then by type name, then by assignable type.
+   * A {@link org.apex.annotation.Provider} or {@link Supplier} dependency gets
+   * a provider looking the bean up on its first call, an {@link Optional}
+   * dependency gets the bean if there is one.
+   *
+   * @param dependency dependency
+   * @return bean, or null if no bean matches
+   */
+  protected Object resolveDependency(BeanDefinition.Dependency dependency) {
+    if (dependency.deferred()) {
+      return new BeanProvider<>(dependency.unwrap());
+    }
+    if (dependency.optional()) {
+      return Optional.ofNullable(resolveDependency(dependency.unwrap()));
+    }
+    final String beanName = dependencyName(dependency);
+    return beanName != null ? resolveBean(beanName) : null;
+  }
+
+  /**
+   * Get the name of the bean a dependency resolves to, without creating it
+   */
+  private String dependencyName(BeanDefinition.Dependency dependency) {
+    if (dependency.qualifier() != null && isRegistered(dependency.qualifier())) {
+      return dependency.qualifier();
+    }
+    final String typeName = dependency.type().getName();
+    if (isRegistered(typeName)) {
+      return typeName;
+    }
+    return candidateName(dependency.type(), dependency.qualifier());
+  }
+
+  private boolean isRegistered(String beanName) {
+    return slots.containsKey(beanName) || beanDefinitionMap.containsKey(beanName);
+  }
+
+  /**
+   * Resolve the single bean assignable to the type. When several beans
+   * match, the qualifier picks the candidate named after it or carrying it
+   * among its qualifiers, and a {@link org.apex.annotation.Primary} bean is
+   * the default candidate.
+   *
+   * @param type      bean type
+   * @param qualifier qualifier, may be null
+   * @return bean, or null if no bean matches
+   * @throws QualifierNotUniqueException if several beans match and none stands out
+   */
+  protected Object resolveCandidate(Class<?> type, String qualifier) {
+    final String beanName = candidateName(type, qualifier);
+    return beanName != null ? resolveBean(beanName) : null;
+  }
+
+  /**
+   * Get the candidate of a type and qualifier. The selection, ambiguity
+   * included, is made once and cached until a bean is registered or removed.
+   */
+  private String candidateName(Class<?> type, String qualifier) {
+    final Map<Class<?>, Map<String, Candidate>> candidates = this.candidates;
+    Map<String, Candidate> byQualifier = candidates.get(type);
+    if (byQualifier == null) {
+      byQualifier = candidates.computeIfAbsent(type, key -> new ConcurrentHashMap<>(4));
+    }
+    final String key = qualifier != null ? qualifier : "";
+    Candidate candidate = byQualifier.get(key);
+    if (candidate == null) {
+      try {
+        candidate = new Candidate(TypeIndex.select(type, beanNamesForType(type), qualifier, beanDefinitionMap::get), null);
+      } catch (QualifierNotUniqueException e) {
+        candidate = new Candidate(null, e.getMessage());
+      }
+      byQualifier.put(key, candidate);
+    }
+    if (candidate.problem != null) {
+      throw new QualifierNotUniqueException(candidate.problem);
+    }
+    return candidate.name;
+  }
+
+  /**
+   * Forget the selected candidates, after the beans or their definitions changed.
+   * Selections made concurrently go to the discarded map.
+   */
+  private void candidatesChanged() {
+    this.candidates = new ConcurrentHashMap<>(64);
+  }
+
+  /**
+   * Get the wiring of a class resolved at build time
+   *
+   * @param cls bean class
+   * @return wiring, or null if there is no wiring descriptor or it has none for the class
+   */
+  WiringDescriptor.Wiring wiring(Class<?> cls) {
+    final WiringDescriptor wiringDescriptor = this.wiringDescriptor;
+    return wiringDescriptor != null ? wiringDescriptor.wiring(cls) : null;
+  }
+
+  /**
+   * Publish a created instance, not injected yet
+   *
+   * @param beanName bean name
+   * @param bean     bean
+   */
+  protected void registerInstance(String beanName, Object bean) {
+    this.instanceMap.put(beanName, bean);
+    this.klassInfoMap.put(beanName, KlassInfo.create(bean));
+    detach(this.slots.put(beanName, new BeanSlot(bean)));
+    if (this.typeIndex.add(beanName, bean.getClass())) {
+      candidatesChanged();
     }
   }
 
+  /**
+   * Get the names of the beans assignable to the type, without creating lazy
+   * beans. Beans are matched by their instance class once created, by the
+   * class of their definition before.
+   *
+   * @param type bean type
+   * @return unmodifiable bean names
+   */
+  protected List<String> beanNamesForType(Class<?> type) {
+    return typeIndex.names(type);
+  }
+
+  /**
+   * Get the bean registered under the name of the class, else the candidate
+   * among the beans assignable to it, such as a {@link org.apex.annotation.Bean}
+   * product named after its method. A ready bean is returned without being
+   * injected again, see {@link #reinject(Object)}.
+   *
+   * @param cls bean class
+   * @param <T> bean type
+   * @return bean, or null if there is none
+   * @throws QualifierNotUniqueException if several beans are assignable and none is primary
+   */
   @Override
   public <T> T getBean(Class<T> cls) {
-    Validate.notNull(cls, "cls must not be null");
-    if (instanceMap.containsKey(cls.getName())) {
-      return this.getInjectBean(cls);
-    } else {
-      return null;
+    // not Validate, whose varargs array escapes when the scoped path isn't inlined
+    Objects.requireNonNull(cls, "cls must not be null");
+    // the slot of a ready bean and the handle of a scoped bean are cached
+    // per class, no name hashing on the hot path
+    final SlotRef slotRef = slotsByClass.get(cls);
+    final BeanSlot cached = slotRef.slot;
+    if (cached != null && cached.state == BeanState.READY) {
+      return cls.cast(cached.bean);
+    }
+    final ScopedBean scoped = slotRef.scoped;
+    if (scoped != null && !scoped.retired()) {
+      return cls.cast(scoped.scope().get(scoped));
     }
+    final String beanName = cls.getName();
+    final Object bean = resolveBean(beanName);
+    if (bean == null && !isRegistered(beanName)) {
+      // not cached, a bean registered under the class name later takes over
+      return cls.cast(resolveCandidate(cls, null));
+    }
+    final BeanSlot slot = slots.get(beanName);
+    if (slot != null && slot.bean == bean && slot.state == BeanState.READY) {
+      slotRef.slot = slot;
+    } else if (slot == null) {
+      slotRef.scoped = scopedBeans.get(beanName);
+    }
+    return cls.cast(bean);
   }
 
   @Override
   public <T> T getBean(String beanName) {
-    Validate.notNull(beanName, "beanName must not be null");
-    return getBean(instanceMap.get(beanName));
+    Objects.requireNonNull(beanName, "beanName must not be null");
+    return (T) resolveBean(beanName);
   }
 
   @Override
@@ -94,9 +656,15 @@ public abstract class AbstractFactory implements ApexFactory {
   @Override
   public <T> T addBean(Class<T> cls) {
     Validate.notNull(cls, "cls must not be null");
-    final T ref = ReflectionHelper.newInstance(cls);
-    this.instanceMap.put(cls.getName(), ref);
-    return getBean(cls);
+    final BeanDefinition beanDefinition = BeanDefinition.create(cls, false);
+    this.registerBeanDefinition(beanDefinition);
+    synchronized (creationLock) {
+      // through its inject constructor if it has one, like a discovered bean
+      final T ref = cls.cast(createBean(beanDefinition));
+      this.registerInstance(cls.getName(), ref);
+      this.injectInstance(cls.getName(), ref);
+      return ref;
+    }
   }
 
   @Override
@@ -113,24 +681,35 @@ public abstract class AbstractFactory implements ApexFactory {
   @Override
   public <T> T addBean(Object obj) {
     Validate.notNull(obj, "obj must not be null");
-    this.instanceMap.put(obj.getClass().getName(), obj);
-    return getBean(obj);
+    this.registerBeanDefinition(BeanDefinition.create(obj.getClass(), false));
+    this.registerInstance(obj.getClass().getName(), obj);
+    this.injectInstance(obj.getClass().getName(), obj);
+    return (T) obj;
   }
 
+  /**
+   * Get the beans that are instances of the class, its subclasses and
+   * implementations included. Lazy singletons of the type are created first,
+   * the way injection resolves them; prototype and scoped beans, which are
+   * created per lookup, are not included.
+   *
+   * @param cls bean type
+   * @param <T> bean type
+   * @return unmodifiable beans, cached until a bean of the type changes
+   */
   @Override
   public <T> List<T> getBeanByType(Class<T> cls) {
     Validate.notNull(cls, "cls must not be null");
-    List<T> refs = new ArrayList<>();
-    if (instanceMap.isEmpty()) {
-      return refs;
-    }
-    for (Map.Entry<String, Object> entry : instanceMap.entrySet()) {
-      Object value = entry.getValue();
-      if (value.getClass().isAssignableFrom(cls)) {
-        refs.add((T) value);
+    if (!typeIndex.cached(cls)) {
+      // before building the list, as creating a bean changes the index
+      for (String beanName : beanNamesForType(cls)) {
+        final BeanDefinition beanDefinition = beanDefinitionMap.get(beanName);
+        if (beanDefinition != null && !instanceMap.containsKey(beanName) && shared(beanDefinition)) {
+          resolveBean(beanName);
+        }
       }
     }
-    return refs;
+    return typeIndex.beans(cls, instanceMap::get);
   }
 
   @Override
@@ -144,13 +723,124 @@ public abstract class AbstractFactory implements ApexFactory {
   public void removeAll() {
     this.instanceMap.clear();
     this.klassInfoMap.clear();
+    for (BeanSlot slot : this.slots.values()) {
+      detach(slot);
+    }
+    this.slots.clear();
+    this.beanDefinitionMap.clear();
+    this.pools.clear();
+    for (ScopedBean scopedBean : this.scopedBeans.values()) {
+      retire(scopedBean);
+    }
+    this.scopedBeans.clear();
+    this.typeIndex.clear();
+    candidatesChanged();
   }
 
   @Override
   public void removeBean(String beanName) {
     this.instanceMap.remove(beanName);
     this.klassInfoMap.remove(beanName);
+    detach(this.slots.remove(beanName));
+    this.beanDefinitionMap.remove(beanName);
+    this.pools.remove(beanName);
+    retire(this.scopedBeans.remove(beanName));
+    this.typeIndex.remove(beanName);
+    candidatesChanged();
   }
 
   public abstract void init(Apex apex) throws Throwable;
+
+  /**
+   * Retire a replaced or removed slot, so that no cached reference keeps
+   * returning its bean
+   */
+  private static void detach(BeanSlot slot) {
+    if (slot != null) {
+      slot.state = BeanState.DEFINED;
+    }
+  }
+
+  /**
+   * Retire the handle of a scoped bean whose definition or scope changed, so
+   * that no cached reference keeps looking it up
+   */
+  private static void retire(ScopedBean scopedBean) {
+    if (scopedBean != null) {
+      scopedBean.retire();
+    }
+  }
+
+  /**
+   * A registered instance and its lifecycle state, read in one map lookup.
+   * A slot that was replaced or removed goes back to {@link BeanState#DEFINED}.
+   */
+  private static final class BeanSlot {
+    final Object bean;
+    volatile BeanState state = BeanState.INSTANTIATED;
+
+    BeanSlot(Object bean) {
+      this.bean = bean;
+    }
+  }
+
+  /**
+   * Provider of a bean, injected for a {@link org.apex.annotation.Provider}
+   * or {@link Supplier} dependency. The bean is resolved, and created if it
+   * is lazy, on the first call; its slot is kept so that later calls read it
+   * directly until the bean is replaced or removed.
+   */
+  private final class BeanProvider<T> implements org.apex.annotation.Provider<T>, Supplier<T> {
+    private final BeanDefinition.Dependency dependency;
+    private volatile BeanSlot slot;
+
+    BeanProvider(BeanDefinition.Dependency dependency) {
+      this.dependency = dependency;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get() {
+      final BeanSlot cached = slot;
+      if (cached != null && cached.state == BeanState.READY) {
+        return (T) cached.bean;
+      }
+      final String beanName = dependencyName(dependency);
+      final Object bean = beanName != null ? resolveBean(beanName) : null;
+      if (bean == null) {
+        throw new BeanInstantiationException("No bean found for " + dependency);
+      }
+      final BeanSlot resolved = slots.get(beanName);
+      if (resolved != null && resolved.bean == bean) {
+        slot = resolved;
+      }
+      return (T) bean;
+    }
+
+    @Override
+    public String toString() {
+      return "Provider<" + dependency + ">";
+    }
+  }
+
+  /**
+   * The candidate selected for a type and qualifier, or why none stands out
+   */
+  private static final class Candidate {
+    final String name;
+    final String problem;
+
+    Candidate(String name, String problem) {
+      this.name = name;
+      this.problem = problem;
+    }
+  }
+
+  /**
+   * The slot or the scoped handle of the bean named after a class, cached per class
+   */
+  private static final class SlotRef {
+    volatile BeanSlot slot;
+    volatile ScopedBean scoped;
+  }
 }
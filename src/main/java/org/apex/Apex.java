@@ -27,6 +27,7 @@ import org.apache.commons.lang3.Validate;
 import org.apex.scheduler.Scheduler;
 
 import java.lang.annotation.Annotation;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
@@ -47,6 +48,8 @@ public class Apex {
   private final Set<Class<? extends Annotation>> typeAnnotations = new LinkedHashSet<>();
   private final Set<TypeFilter> typeFilters = new LinkedHashSet<>();
   private final Set<String> scanPackages = new LinkedHashSet<>();
+  private final Set<String> rejectPackages = new LinkedHashSet<>();
+  private final Set<String> rejectJars = new LinkedHashSet<>();
   private final Environment environment = Environment.create();
   private final Set<Class<?>> implInterfaces = new LinkedHashSet<>();
   private final Set<Injector> injectors = new LinkedHashSet<>();
@@ -55,6 +58,15 @@ public class Apex {
   private Scheduler scheduler;
   private Executor executor;
   private String[] args;
+  private boolean beanIndex = true;
+  private boolean wiringDescriptor = true;
+  private boolean parallelScan;
+  private int scanThreads;
+  private Path scanCache;
+  private boolean lazy;
+  private boolean bytecodeInjection;
+  private boolean parallelWiring;
+  private int wiringParallelism;
 
   private Apex() {
   }
@@ -260,7 +272,7 @@ public class Apex {
    * @throws NullPointerException if the specified scheduler is null
    */
   public Apex scheduler(Scheduler scheduler) {
-    Validate.notNull(this.scheduler, "scheduler was already set to %s", this.scheduler);
+    Validate.validState(this.scheduler == null, "scheduler was already set to %s", this.scheduler);
     this.scheduler = requireNonNull(scheduler);
     return this;
   }
@@ -283,7 +295,7 @@ public class Apex {
    * @throws NullPointerException if the specified executor is null
    */
   public Apex executor(Executor executor) {
-    Validate.notNull(this.executor, "executor was already set to %s", this.executor);
+    Validate.validState(this.executor == null, "executor was already set to %s", this.executor);
     this.executor = requireNonNull(executor);
     return this;
   }
@@ -311,6 +323,208 @@ public class Apex {
     return Scheduler.guardedScheduler(scheduler);
   }
 
+  /**
+   * Whether to discover beans from the compile time {@link BeanIndex} when one
+   * is present on the classpath. Disable it to always scan the classpath.
+   *
+   * @param beanIndex use the bean index
+   * @return this
+   */
+  public Apex beanIndex(boolean beanIndex) {
+    this.beanIndex = beanIndex;
+    return this;
+  }
+
+  /**
+   * Whether to use the compile time bean index
+   *
+   * @return use the bean index
+   */
+  public boolean beanIndex() {
+    return beanIndex;
+  }
+
+  /**
+   * Whether to take the bean definitions and injection targets from the
+   * {@link WiringDescriptor} written at build time when one is present on the
+   * classpath and was built for the same packages. Disable it to always
+   * discover beans at startup.
+   *
+   * @param wiringDescriptor use the wiring descriptor
+   * @return this
+   */
+  public Apex wiringDescriptor(boolean wiringDescriptor) {
+    this.wiringDescriptor = wiringDescriptor;
+    return this;
+  }
+
+  /**
+   * Whether to use the build time wiring descriptor
+   *
+   * @return use the wiring descriptor
+   */
+  public boolean wiringDescriptor() {
+    return wiringDescriptor;
+  }
+
+  /**
+   * Write injected fields with a {@link FieldWriter} generated per bean class
+   * instead of reflection. Private, final and static fields, and classes that
+   * cannot be instrumented, keep the reflective path. Takes effect for the
+   * injections made afterwards, the {@link InjectionPlan} of each setting is
+   * cached apart.
+   *
+   * @param bytecodeInjection generate field writers
+   * @return this
+   */
+  public Apex bytecodeInjection(boolean bytecodeInjection) {
+    this.bytecodeInjection = bytecodeInjection;
+    return this;
+  }
+
+  /**
+   * Whether injected fields are written by generated field writers
+   *
+   * @return generate field writers
+   */
+  public boolean bytecodeInjection() {
+    return bytecodeInjection;
+  }
+
+  /**
+   * Scan the classpath and load, filter and instantiate the discovered classes
+   * on several threads. The threads come from {@link #executor()} unless
+   * {@link #scanThreads(int)} is set.
+   *
+   * @param parallelScan scan in parallel
+   * @return this
+   */
+  public Apex parallelScan(boolean parallelScan) {
+    this.parallelScan = parallelScan;
+    return this;
+  }
+
+  /**
+   * Whether to scan the classpath in parallel
+   *
+   * @return scan in parallel
+   */
+  public boolean parallelScan() {
+    return parallelScan;
+  }
+
+  /**
+   * Use a dedicated pool of the given size for parallel scanning instead of
+   * {@link #executor()}. The pool is shut down when discovery completes.
+   *
+   * @param scanThreads number of scan threads
+   * @return this
+   */
+  public Apex scanThreads(int scanThreads) {
+    Validate.isTrue(scanThreads > 0, "scanThreads must be greater than 0");
+    this.scanThreads = scanThreads;
+    this.parallelScan = true;
+    return this;
+  }
+
+  /**
+   * Get the number of dedicated scan threads, 0 if {@link #executor()} is used
+   *
+   * @return number of scan threads
+   */
+  public int scanThreads() {
+    return scanThreads;
+  }
+
+  /**
+   * Create and inject independent beans concurrently on {@link #executor()}.
+   * A bean starts as soon as the beans it depends on are ready. Disabled by
+   * default, which wires the beans one at a time on the calling thread.
+   *
+   * @param parallelWiring wire in parallel
+   * @return this
+   */
+  public Apex parallelWiring(boolean parallelWiring) {
+    this.parallelWiring = parallelWiring;
+    return this;
+  }
+
+  /**
+   * Whether to wire independent beans in parallel
+   *
+   * @return wire in parallel
+   */
+  public boolean parallelWiring() {
+    return parallelWiring;
+  }
+
+  /**
+   * Limit the number of beans wired at the same time and enable parallel
+   * wiring. Without a limit, the parallelism of {@link #executor()} is used.
+   *
+   * @param wiringParallelism maximum number of beans wired at once, 0 for no limit
+   * @return this
+   */
+  public Apex wiringParallelism(int wiringParallelism) {
+    Validate.isTrue(wiringParallelism >= 0, "wiringParallelism must not be negative");
+    this.wiringParallelism = wiringParallelism;
+    this.parallelWiring = true;
+    return this;
+  }
+
+  /**
+   * Get the maximum number of beans wired at once, 0 if unlimited
+   *
+   * @return wiring parallelism
+   */
+  public int wiringParallelism() {
+    return wiringParallelism;
+  }
+
+  /**
+   * Cache the result of the classpath scan in the given directory. The cache
+   * is invalidated whenever a classpath entry or the scan configuration
+   * changes. Disabled by default.
+   *
+   * @param directory cache directory, null to disable the cache
+   * @return this
+   */
+  public Apex scanCache(Path directory) {
+    this.scanCache = directory;
+    return this;
+  }
+
+  /**
+   * Get the scan cache directory, null if the scan cache is disabled
+   *
+   * @return scan cache directory
+   */
+  public Path scanCache() {
+    return scanCache;
+  }
+
+  /**
+   * Create beans on first use instead of during discovery. Classes annotated
+   * with {@link org.apex.annotation.Lazy} override this default, and
+   * {@link org.apex.annotation.ConfigBean} classes are always created eagerly.
+   *
+   * @param lazy create beans lazily
+   * @return this
+   */
+  public Apex lazy(boolean lazy) {
+    this.lazy = lazy;
+    return this;
+  }
+
+  /**
+   * Whether beans are created lazily by default
+   *
+   * @return create beans lazily
+   */
+  public boolean lazy() {
+    return lazy;
+  }
+
   /**
    * Get scan package
    *
@@ -320,6 +534,49 @@ public class Apex {
     return scanPackages;
   }
 
+  /**
+   * Exclude packages and their sub packages from discovery
+   *
+   * @param packages package names
+   * @return this
+   */
+  public Apex rejectPackages(String... packages) {
+    Validate.notNull(packages, "packages can't be null");
+    this.rejectPackages.addAll(Arrays.asList(packages));
+    return this;
+  }
+
+  /**
+   * Get rejected packages
+   *
+   * @return rejected packages
+   */
+  public Set<String> rejectPackages() {
+    return rejectPackages;
+  }
+
+  /**
+   * Exclude whole jars from discovery, by file name. A name may contain
+   * {@code *} wildcards, such as {@code "guava-*.jar"}.
+   *
+   * @param jars jar file names
+   * @return this
+   */
+  public Apex rejectJars(String... jars) {
+    Validate.notNull(jars, "jars can't be null");
+    this.rejectJars.addAll(Arrays.asList(jars));
+    return this;
+  }
+
+  /**
+   * Get rejected jar file names
+   *
+   * @return rejected jar file names
+   */
+  public Set<String> rejectJars() {
+    return rejectJars;
+  }
+
   /**
    * Set main method args
    */
@@ -23,21 +23,21 @@
  */
 package org.apex;
 
-import org.apache.commons.lang3.ObjectUtils;
-import org.apex.annotation.Bean;
-import org.apex.annotation.ConfigBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 
 /**
  * @author WangYi
  * @since 2020/6/22
  */
 public class ApexContext extends AbstractFactory {
+  private static final Logger log = LoggerFactory.getLogger(ApexContext.class);
+  private DiscoveryStats discoveryStats = new DiscoveryStats();
+  private volatile DependencyGraph dependencyGraph;
+
   public ApexContext() {}
 
   public static ApexContext of() {
@@ -50,83 +50,113 @@ public class ApexContext extends AbstractFactory {
     environment.mainArgs(apex.mainArgs());
     environment.init();
 
-    Map<Object, Class<?>> discover = Discoverer.discover(apex);
-    for (Map.Entry<Object, Class<?>> entry : discover.entrySet()) {
-      Object key = entry.getKey();
-      Class<?> value = entry.getValue();
-      this.klassInfoMap.put(value.getName(), KlassInfo.create(key));
-      this.instanceMap.put(value.getName(), key);
-    }
-    for (Map.Entry<String, KlassInfo> entry : klassInfoMap.entrySet()) {
-      this.instanceMap.put(entry.getKey(), entry.getValue().target());
-    }
-    inject();
-    for (Map.Entry<String, Object> entry : instanceMap.entrySet()) {
-      if (entry.getValue().getClass().isAnnotationPresent(ConfigBean.class)) {
-        registerConfigBean(entry.getValue(), entry.getValue().getClass());
+    this.discoveryStats = new DiscoveryStats();
+    final WiringDescriptor wiringDescriptor = wiringDescriptor(apex);
+    if (wiringDescriptor != null) {
+      log.debug("Wiring {} beans from {}", wiringDescriptor.beanDefinitions().size(), WiringDescriptor.LOCATION);
+      for (BeanDefinition beanDefinition : wiringDescriptor.beanDefinitions()) {
+        registerBeanDefinition(beanDefinition);
       }
-    }
-    inject();
-  }
-
-  private void inject() throws Exception {
-    for (Map.Entry<String, Object> entry : instanceMap.entrySet()) {
-      KlassInfo def = this.klassInfoMap.get(entry.getKey());
-      final Object obj = entry.getValue();
-      if (def == null) {
-        def = KlassInfo.create(obj);
+    } else {
+      for (BeanDefinition beanDefinition : Discoverer.discover(apex, discoveryStats)) {
+        registerBeanDefinition(beanDefinition);
+      }
+      // before the bean methods are listed, which links every class their signatures refer to
+      BeanConditions.evaluateEnvironment(this, environment);
+      for (BeanDefinition beanDefinition : new ArrayList<>(beanDefinitions())) {
+        registerConfigBeanDefinitions(beanDefinition, apex.lazy());
       }
-      InjectContext injectContext = InjectContext.create(def, instanceMap);
-      for (final Injector next : injectors) {
-        next.inject(injectContext);
+    }
+    this.wiringDescriptor = wiringDescriptor;
+    BeanConditions.evaluate(this, environment);
+    final DependencyGraph dependencyGraph = DependencyGraph.create(this, this::shared);
+    for (String problem : dependencyGraph.problems()) {
+      log.warn(problem);
+    }
+    this.dependencyGraph = dependencyGraph;
+    if (apex.parallelWiring()) {
+      final List<List<String>> components = new ArrayList<>();
+      for (List<BeanDefinition> component : dependencyGraph.components()) {
+        final List<String> beanNames = new ArrayList<>(component.size());
+        for (BeanDefinition beanDefinition : component) {
+          beanNames.add(beanDefinition.name());
+        }
+        components.add(beanNames);
       }
+      // before any task starts, a bean must never change locks while it may be created
+      assignCreationLocks(components);
+      ParallelWiring.wire(dependencyGraph, this::shared, this::resolveBeans, apex.executor(),
+              apex.wiringParallelism());
+    } else {
+      wire(dependencyGraph);
     }
   }
 
-  private void registerConfigBean(Object key, Class<?> value) throws Exception {
-    if (!support(value)) {
+  /**
+   * Register the definitions of the bean methods of a configuration bean. A
+   * configuration bean whose methods refer to a class missing from the
+   * classpath cannot be introspected nor created, and is skipped like a bean
+   * whose conditions failed.
+   */
+  private void registerConfigBeanDefinitions(BeanDefinition beanDefinition, boolean lazy) {
+    final List<BeanDefinition> factoryDefinitions;
+    try {
+      factoryDefinitions = BeanDefinition.configBeanDefinitions(beanDefinition, lazy);
+    } catch (LinkageError e) {
+      log.warn("Skipped configuration bean {}, its methods refer to a missing class {}, guard the bean with"
+              + " @ConditionalOnClass", beanDefinition.name(), e.getMessage());
+      removeBeanDefinition(beanDefinition.name());
       return;
     }
-    if (value.getMethods().length != 0) {
-      Method[] methods = value.getDeclaredMethods();
-      InjectContext injectContext = InjectContext.create(KlassInfo.create(key), instanceMap);
-      for (Method method : methods) {
-        if (method.getReturnType() == void.class) {
-          throw new IllegalArgumentException("The return value of the method marked with " +
-                  "Bean annotation in the configuration cannot be " +
-                  "void:{" + value.getName() + "}" + "#" + method.getName());
-        }
-        KlassInfo klassInfo = createConfigBean(injectContext, method);
-        if (Objects.isNull(klassInfo)) {
-          continue;
-        }
-        klassInfoMap.put(klassInfo.name(), klassInfo);
-        instanceMap.put(klassInfo.name(), klassInfo.target());
-      }
+    for (BeanDefinition factoryDefinition : factoryDefinitions) {
+      registerBeanDefinition(factoryDefinition);
     }
   }
 
-  private boolean support(Class<?> cls) {
-    return cls.isAnnotationPresent(ConfigBean.class) && ObjectUtils.isNotEmpty(cls.getDeclaredMethods());
+  /**
+   * Get the counters and timings of the last bean discovery
+   *
+   * @return discovery stats
+   */
+  public DiscoveryStats discoveryStats() {
+    return discoveryStats;
+  }
+
+  /**
+   * Get the dependency graph the beans were wired in
+   *
+   * @return dependency graph, null before initialization
+   */
+  public DependencyGraph dependencyGraph() {
+    return dependencyGraph;
   }
 
-  private KlassInfo createConfigBean(InjectContext injectContext, Method method) throws Exception {
-    if (!method.isAnnotationPresent(Bean.class)) {
+  /**
+   * Get the wiring descriptor built for the packages of the settings
+   */
+  private WiringDescriptor wiringDescriptor(Apex apex) {
+    if (!apex.wiringDescriptor()) {
       return null;
     }
-    List<Object> invokeParam = new ArrayList<>();
-    Class<?>[] parameterTypes = method.getParameterTypes();
-    for (Class<?> parameterType : parameterTypes) {
-      Object o = injectContext.instances().get(parameterType.getName());
-      invokeParam.add(o);
+    final WiringDescriptor wiringDescriptor = WiringDescriptor.load(ReflectionHelper.defaultClassLoader());
+    if (wiringDescriptor != null && !wiringDescriptor.accepts(apex)) {
+      log.warn("Ignoring wiring descriptor built with {}, discovering with {}", wiringDescriptor.options(),
+              WiringDescriptor.options(apex));
+      return null;
     }
-    Object invoke;
-    if (method.getParameterCount() == 0) {
-      invoke = method.invoke(injectContext.object());
-    } else {
-      invoke = method.invoke(injectContext.object(), invokeParam);
+    return wiringDescriptor;
+  }
+
+  /**
+   * Create and inject the eager beans once each, dependencies first.
+   * Prototype and scoped beans are created when they are looked up.
+   */
+  private void wire(DependencyGraph dependencyGraph) {
+    for (BeanDefinition beanDefinition : dependencyGraph.order()) {
+      if (!beanDefinition.lazy() && shared(beanDefinition)) {
+        resolveBean(beanDefinition.name());
+      }
     }
-    return KlassInfo.create(invoke);
   }
 
   private static class ApexContextHolder {
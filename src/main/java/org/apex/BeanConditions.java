@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.apache.commons.lang3.Validate;
+import org.apex.annotation.ConditionalOnClass;
+import org.apex.annotation.ConditionalOnMissingBean;
+import org.apex.annotation.ConditionalOnProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.AnnotatedElement;
+import java.util.ArrayList;
+
+/**
+ * Evaluates the conditional annotations of the registered bean definitions and
+ * removes the definitions whose conditions fail, before any bean is created.
+ * Property and class conditions are evaluated first, then the {@link org.apex.annotation.Bean}
+ * methods of removed configuration beans are dropped, and finally missing bean
+ * conditions are evaluated in registration order against what is left.
+ *
+ * @author WangYi
+ * @since 2020/11/12
+ */
+final class BeanConditions {
+  private static final Logger log = LoggerFactory.getLogger(BeanConditions.class);
+
+  private BeanConditions() {}
+
+  /**
+   * Remove the definitions whose conditions fail
+   *
+   * @param registry    bean definition registry
+   * @param environment environment the property conditions are read from
+   * @return number of removed definitions
+   */
+  static int evaluate(BeanDefinitionRegistry registry, Environment environment) {
+    int removed = evaluateEnvironment(registry, environment);
+    for (BeanDefinition beanDefinition : new ArrayList<>(registry.beanDefinitions())) {
+      if (beanDefinition.factoryBean() != null
+              && !registry.containsBeanDefinition(beanDefinition.factoryBean())) {
+        removed += remove(registry, beanDefinition);
+      }
+    }
+    for (BeanDefinition beanDefinition : new ArrayList<>(registry.beanDefinitions())) {
+      final ConditionalOnMissingBean missingBean =
+              element(beanDefinition).getAnnotation(ConditionalOnMissingBean.class);
+      if (missingBean != null && !matchMissingBean(missingBean, beanDefinition, registry)) {
+        removed += remove(registry, beanDefinition);
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Remove the definitions whose property or class conditions fail. These
+   * conditions are read from the annotations alone, so they can be
+   * evaluated before the constructors and methods of the beans are
+   * introspected, which fails for members referring to a missing class.
+   *
+   * @param registry    bean definition registry
+   * @param environment environment the property conditions are read from
+   * @return number of removed definitions
+   */
+  static int evaluateEnvironment(BeanDefinitionRegistry registry, Environment environment) {
+    Validate.notNull(registry, "registry must not be null");
+    Validate.notNull(environment, "environment must not be null");
+    int removed = 0;
+    for (BeanDefinition beanDefinition : new ArrayList<>(registry.beanDefinitions())) {
+      final AnnotatedElement element = element(beanDefinition);
+      if (!matchProperty(element.getAnnotation(ConditionalOnProperty.class), environment)
+              || !matchClass(element.getAnnotation(ConditionalOnClass.class), beanDefinition)) {
+        removed += remove(registry, beanDefinition);
+      }
+    }
+    return removed;
+  }
+
+  private static AnnotatedElement element(BeanDefinition beanDefinition) {
+    return beanDefinition.factoryMethod() != null
+            ? beanDefinition.factoryMethod() : beanDefinition.beanClass();
+  }
+
+  private static boolean matchProperty(ConditionalOnProperty condition, Environment environment) {
+    if (condition == null) {
+      return true;
+    }
+    final String value = environment.get(condition.value());
+    if (value == null) {
+      return condition.matchIfMissing();
+    }
+    return condition.havingValue().isEmpty()
+            ? !"false".equalsIgnoreCase(value.trim())
+            : condition.havingValue().equals(value.trim());
+  }
+
+  private static boolean matchClass(ConditionalOnClass condition, BeanDefinition beanDefinition) {
+    if (condition == null) {
+      return true;
+    }
+    final ClassLoader classLoader = beanDefinition.beanClass().getClassLoader();
+    for (String className : condition.value()) {
+      try {
+        Class.forName(className, false, classLoader != null ? classLoader : ReflectionHelper.defaultClassLoader());
+      } catch (ClassNotFoundException | LinkageError e) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean matchMissingBean(ConditionalOnMissingBean condition,
+                                          BeanDefinition beanDefinition, BeanDefinitionRegistry registry) {
+    final Class<?>[] types = condition.value().length > 0
+            ? condition.value() : new Class<?>[]{beanDefinition.beanClass()};
+    for (BeanDefinition other : registry.beanDefinitions()) {
+      if (other == beanDefinition) {
+        continue;
+      }
+      for (Class<?> type : types) {
+        if (type.isAssignableFrom(other.beanClass())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static int remove(BeanDefinitionRegistry registry, BeanDefinition beanDefinition) {
+    final BeanDefinition current = registry.getBeanDefinition(beanDefinition.name());
+    if (current != beanDefinition) {
+      return 0;
+    }
+    registry.removeBeanDefinition(beanDefinition.name());
+    log.debug("Skipped bean {}, its conditions did not match", beanDefinition.name());
+    return 1;
+  }
+}
@@ -0,0 +1,481 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.apex.annotation.Bean;
+import org.apex.annotation.ConfigBean;
+import org.apex.annotation.Inject;
+import org.apex.annotation.Lazy;
+import org.apex.annotation.Named;
+import org.apex.annotation.Pooled;
+import org.apex.annotation.Primary;
+import org.apex.annotation.Prototype;
+import org.apex.annotation.Provider;
+import org.apex.annotation.Qualifier;
+import org.apex.annotation.Scope;
+import org.apex.annotation.Singleton;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Describes a bean without creating it: its name, class, scope, qualifiers,
+ * dependencies and, for beans produced by a {@link Bean} method, the factory
+ * bean and method. Definitions are registered before any bean is created.
+ *
+ * @author WangYi
+ * @since 2020/11/10
+ */
+public class BeanDefinition {
+  private final String name;
+  private final Class<?> beanClass;
+  private final Class<? extends Annotation> scope;
+  private final Set<String> qualifiers;
+  private final String factoryBean;
+  private final Method factoryMethod;
+  private final boolean lazy;
+  private final boolean primary;
+  private volatile Constructor<?> constructor;
+  private volatile boolean constructorResolved;
+  private volatile List<Dependency> dependencies;
+
+  private BeanDefinition(String name, Class<?> beanClass, Class<? extends Annotation> scope,
+                         Set<String> qualifiers, String factoryBean, Method factoryMethod, boolean lazy) {
+    this.name = name;
+    this.beanClass = beanClass;
+    this.scope = scope;
+    this.qualifiers = Collections.unmodifiableSet(qualifiers);
+    this.factoryBean = factoryBean;
+    this.factoryMethod = factoryMethod;
+    this.lazy = lazy;
+    this.primary = (factoryMethod != null ? factoryMethod : beanClass).isAnnotationPresent(Primary.class);
+  }
+
+  /**
+   * Create the definition of a bean instantiated from its class
+   *
+   * @param beanClass bean class
+   * @param lazy      create the bean on first use
+   * @return bean definition
+   */
+  public static BeanDefinition create(Class<?> beanClass, boolean lazy) {
+    final Set<String> qualifiers = new LinkedHashSet<>();
+    addQualifiers(qualifiers, beanClass);
+    final Singleton singleton = beanClass.getAnnotation(Singleton.class);
+    if (singleton != null && !singleton.value().isEmpty()) {
+      qualifiers.add(singleton.value());
+    }
+    return new BeanDefinition(beanClass.getName(), beanClass, scope(beanClass),
+            qualifiers, null, null, lazy);
+  }
+
+  /**
+   * Create the definition of a bean produced by a {@link Bean} method, named
+   * after the value of the annotation or else the method, so that several
+   * methods may return the same type
+   *
+   * @param factoryBean   name of the bean declaring the method
+   * @param factoryMethod bean method
+   * @param lazy          create the bean on first use
+   * @return bean definition
+   */
+  public static BeanDefinition create(String factoryBean, Method factoryMethod, boolean lazy) {
+    final Set<String> qualifiers = new LinkedHashSet<>();
+    final Bean bean = factoryMethod.getAnnotation(Bean.class);
+    final String name = bean != null && !bean.value().isEmpty() ? bean.value() : factoryMethod.getName();
+    qualifiers.add(name);
+    addQualifiers(qualifiers, factoryMethod);
+    final Class<?> beanClass = factoryMethod.getReturnType();
+    return new BeanDefinition(name, beanClass, scope(factoryMethod),
+            qualifiers, factoryBean, factoryMethod, lazy);
+  }
+
+  /**
+   * Create a definition from values resolved ahead of time, such as those of
+   * a {@link WiringDescriptor}
+   */
+  static BeanDefinition create(String name, Class<?> beanClass, Class<? extends Annotation> scope,
+                               Set<String> qualifiers, String factoryBean, Method factoryMethod, boolean lazy) {
+    return new BeanDefinition(name, beanClass, scope, new LinkedHashSet<>(qualifiers),
+            factoryBean, factoryMethod, lazy);
+  }
+
+  /**
+   * Create the definitions of the {@link Bean} methods declared by a
+   * {@link ConfigBean}
+   *
+   * @param configBean definition of the configuration bean
+   * @param lazy       default laziness of methods without {@link Lazy}
+   * @return bean definitions, empty if the bean is not a configuration bean
+   * @throws LinkageError if a method of the bean refers to a class missing from the classpath
+   */
+  static List<BeanDefinition> configBeanDefinitions(BeanDefinition configBean, boolean lazy) {
+    final Class<?> value = configBean.beanClass();
+    if (!value.isAnnotationPresent(ConfigBean.class)) {
+      return Collections.emptyList();
+    }
+    final List<BeanDefinition> beanDefinitions = new ArrayList<>();
+    for (Method method : value.getDeclaredMethods()) {
+      if (!method.isAnnotationPresent(Bean.class)) {
+        continue;
+      }
+      if (method.getReturnType() == void.class) {
+        throw new IllegalArgumentException("The return value of the method marked with " +
+                "Bean annotation in the configuration cannot be " +
+                "void:{" + value.getName() + "}" + "#" + method.getName());
+      }
+      final Lazy methodLazy = method.getAnnotation(Lazy.class);
+      beanDefinitions.add(create(configBean.name(), method, methodLazy != null ? methodLazy.value() : lazy));
+    }
+    return beanDefinitions;
+  }
+
+  /**
+   * Find the constructor marked with {@link Inject}, null if the bean is
+   * created through its no-arg constructor
+   */
+  private static Constructor<?> injectConstructor(Class<?> beanClass) {
+    Constructor<?> injectConstructor = null;
+    for (Constructor<?> constructor : beanClass.getDeclaredConstructors()) {
+      if (!constructor.isAnnotationPresent(Inject.class)) {
+        continue;
+      }
+      if (injectConstructor != null) {
+        throw new IllegalArgumentException("Only one constructor can be marked " +
+                "with Inject annotation:{" + beanClass.getName() + "}");
+      }
+      injectConstructor = constructor;
+    }
+    return injectConstructor;
+  }
+
+  /**
+   * Get the qualifier of an injection point: the value of {@link Named}, or
+   * the value of the {@link Qualifier} marking one of its annotations
+   *
+   * @param element field or parameter
+   * @return qualifier, null if the point is resolved by type
+   */
+  static String qualifier(AnnotatedElement element) {
+    final Named named = element.getAnnotation(Named.class);
+    if (named != null && !named.value().isEmpty()) {
+      return named.value();
+    }
+    for (Annotation annotation : element.getAnnotations()) {
+      final Qualifier qualifier = annotation.annotationType().getAnnotation(Qualifier.class);
+      if (qualifier != null && !qualifier.value().isEmpty()) {
+        return qualifier.value();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Add the value of {@link Named} and the values of the {@link Qualifier}
+   * marking the annotations of a bean class or bean method
+   */
+  private static void addQualifiers(Set<String> qualifiers, AnnotatedElement element) {
+    final Named named = element.getAnnotation(Named.class);
+    if (named != null && !named.value().isEmpty()) {
+      qualifiers.add(named.value());
+    }
+    for (Annotation annotation : element.getAnnotations()) {
+      final Qualifier qualifier = annotation.annotationType().getAnnotation(Qualifier.class);
+      if (qualifier != null && !qualifier.value().isEmpty()) {
+        qualifiers.add(qualifier.value());
+      }
+    }
+  }
+
+  /**
+   * Get the scope annotation, an annotation marked with {@link Scope}.
+   * Beans without one are singletons.
+   */
+  private static Class<? extends Annotation> scope(AnnotatedElement element) {
+    for (Annotation annotation : element.getAnnotations()) {
+      if (annotation.annotationType().isAnnotationPresent(Scope.class)) {
+        return annotation.annotationType();
+      }
+    }
+    return Singleton.class;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public Class<?> beanClass() {
+    return beanClass;
+  }
+
+  public Class<? extends Annotation> scope() {
+    return scope;
+  }
+
+  public Set<String> qualifiers() {
+    return qualifiers;
+  }
+
+  public String factoryBean() {
+    return factoryBean;
+  }
+
+  public Method factoryMethod() {
+    return factoryMethod;
+  }
+
+  /**
+   * Get the constructor marked with {@link Inject}. Resolved on first call,
+   * after the conditions of the bean were evaluated, since its parameters
+   * may refer to classes a {@link org.apex.annotation.ConditionalOnClass}
+   * guards against.
+   *
+   * @return inject constructor, null if the bean is produced by a factory
+   * method or created through its no-arg constructor
+   */
+  public Constructor<?> constructor() {
+    if (!constructorResolved) {
+      if (factoryMethod == null) {
+        this.constructor = injectConstructor(beanClass);
+      }
+      this.constructorResolved = true;
+    }
+    return constructor;
+  }
+
+  public boolean lazy() {
+    return lazy;
+  }
+
+  /**
+   * Whether the bean is the default candidate of its types, marked with {@link Primary}
+   *
+   * @return true for a primary bean
+   */
+  public boolean primary() {
+    return primary;
+  }
+
+  /**
+   * Whether a new bean is created for every lookup and injection, in the
+   * {@link Prototype} and {@link Pooled} scopes
+   *
+   * @return true if the bean is never registered as an instance
+   */
+  public boolean prototype() {
+    return scope == Prototype.class || scope == Pooled.class;
+  }
+
+  /**
+   * Get the maximum number of idle instances pooled for a {@link Pooled} bean
+   *
+   * @return pool size, 0 if the bean is not pooled
+   */
+  public int poolSize() {
+    if (scope != Pooled.class) {
+      return 0;
+    }
+    final AnnotatedElement element = factoryMethod != null ? factoryMethod : beanClass;
+    final Pooled pooled = element.getAnnotation(Pooled.class);
+    return pooled != null ? pooled.value() : 0;
+  }
+
+  /**
+   * Get the dependencies of the bean: the parameters of its {@link Inject}
+   * constructor, its {@link Inject} fields and the parameters of its
+   * {@link Inject} methods, or the factory bean and the parameters of its
+   * factory method. Resolved from
+   * class metadata on first call, without creating the bean.
+   *
+   * @return dependencies
+   */
+  public List<Dependency> dependencies() {
+    List<Dependency> dependencies = this.dependencies;
+    if (dependencies == null) {
+      dependencies = new ArrayList<>();
+      if (factoryMethod != null) {
+        dependencies.add(new Dependency(factoryMethod.getDeclaringClass(), factoryBean));
+        for (Parameter parameter : factoryMethod.getParameters()) {
+          dependencies.add(Dependency.of(parameter.getType(), parameter.getParameterizedType(), parameter));
+        }
+      } else {
+        final Constructor<?> constructor = constructor();
+        if (constructor != null) {
+          for (Parameter parameter : constructor.getParameters()) {
+            dependencies.add(Dependency.of(parameter.getType(), parameter.getParameterizedType(), parameter));
+          }
+        }
+        for (InjectionPlan.InjectionPoint point : InjectionPlan.of(beanClass).injectPoints()) {
+          dependencies.add(point.dependency());
+        }
+        for (InjectionPlan.InjectionMethod injectMethod : InjectionPlan.of(beanClass).injectMethods()) {
+          dependencies.addAll(injectMethod.dependencies());
+        }
+      }
+      this.dependencies = dependencies = Collections.unmodifiableList(dependencies);
+    }
+    return dependencies;
+  }
+
+  @Override
+  public String toString() {
+    return "BeanDefinition{" +
+            "name='" + name + '\'' +
+            ", beanClass=" + beanClass +
+            ", scope=" + scope.getSimpleName() +
+            ", qualifiers=" + qualifiers +
+            (factoryMethod != null ? ", factoryMethod=" + factoryBean + "#" + factoryMethod.getName() : "") +
+            ", lazy=" + lazy +
+            '}';
+  }
+
+  /**
+   * A dependency of a bean, a type and an optional qualifier
+   */
+  public static class Dependency {
+    private static final Set<Class<?>> WRAPPERS = new HashSet<>(Arrays.asList(
+            Provider.class, Supplier.class, Optional.class));
+
+    private final Class<?> type;
+    private final String qualifier;
+    private final Class<?> wrapper;
+
+    public Dependency(Class<?> type, String qualifier) {
+      this(type, qualifier, null);
+    }
+
+    public Dependency(Class<?> type, String qualifier, Class<?> wrapper) {
+      this.type = type;
+      this.qualifier = qualifier;
+      this.wrapper = wrapper;
+    }
+
+    /**
+     * A {@link Provider}, {@link Supplier} or {@link Optional} of a bean
+     * depends on the bean named by its type argument, wrapped.
+     */
+    static Dependency of(Class<?> type, Type genericType, AnnotatedElement element) {
+      if (WRAPPERS.contains(type) && genericType instanceof ParameterizedType) {
+        Type argument = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+        if (argument instanceof ParameterizedType) {
+          argument = ((ParameterizedType) argument).getRawType();
+        }
+        if (argument instanceof Class) {
+          return new Dependency((Class<?>) argument, BeanDefinition.qualifier(element), type);
+        }
+      }
+      return new Dependency(type, BeanDefinition.qualifier(element));
+    }
+
+    /**
+     * Get the type of the bean depended on, the type argument of a wrapper
+     *
+     * @return bean type
+     */
+    public Class<?> type() {
+      return type;
+    }
+
+    public String qualifier() {
+      return qualifier;
+    }
+
+    /**
+     * Get the wrapper of the bean: {@link Provider}, {@link Supplier},
+     * {@link Optional}, or null for the bean itself
+     *
+     * @return wrapper class
+     */
+    public Class<?> wrapper() {
+      return wrapper;
+    }
+
+    /**
+     * Whether the bean is looked up when the wrapper is called rather than
+     * when the dependent is created
+     *
+     * @return true for a provider or supplier
+     */
+    public boolean deferred() {
+      return wrapper == Provider.class || wrapper == Supplier.class;
+    }
+
+    /**
+     * Whether a missing bean is injected as {@link Optional#empty()}
+     *
+     * @return true for an optional
+     */
+    public boolean optional() {
+      return wrapper == Optional.class;
+    }
+
+    /**
+     * Get the dependency on the bean itself
+     *
+     * @return unwrapped dependency
+     */
+    public Dependency unwrap() {
+      return wrapper == null ? this : new Dependency(type, qualifier);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Dependency)) {
+        return false;
+      }
+      Dependency that = (Dependency) o;
+      return type.equals(that.type) && Objects.equals(qualifier, that.qualifier)
+              && Objects.equals(wrapper, that.wrapper);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(type, qualifier, wrapper);
+    }
+
+    @Override
+    public String toString() {
+      final String name = qualifier == null ? type.getName() : type.getName() + "(" + qualifier + ")";
+      return wrapper == null ? name : wrapper.getSimpleName() + "<" + name + ">";
+    }
+  }
+}
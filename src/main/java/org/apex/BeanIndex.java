@@ -0,0 +1,199 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Bean index generated at compile time by the {@code apex-processor} module.
+ * Each line of {@value #INDEX_LOCATION} maps a class name to the annotations
+ * it carries and the interfaces it implements. Indexes of all jars on the
+ * classpath are merged.
+ *
+ * @author WangYi
+ * @since 2020/11/2
+ */
+public class BeanIndex {
+  private static final Logger log = LoggerFactory.getLogger(BeanIndex.class);
+
+  public static final String INDEX_LOCATION = "META-INF/apex.index";
+
+  private final Map<String, Set<String>> stereotypes;
+
+  private BeanIndex(Map<String, Set<String>> stereotypes) {
+    this.stereotypes = stereotypes;
+  }
+
+  /**
+   * Load and merge every index visible to the class loader
+   *
+   * @param classLoader class loader
+   * @return bean index, or null if no index is present
+   */
+  public static BeanIndex load(ClassLoader classLoader) {
+    return load(classLoader, Collections.emptySet());
+  }
+
+  /**
+   * Load and merge every index visible to the class loader, except the
+   * indexes of rejected jars
+   *
+   * @param classLoader class loader
+   * @param rejectJars  jar file names, may contain {@code *} wildcards
+   * @return bean index, or null if no index is present
+   */
+  public static BeanIndex load(ClassLoader classLoader, Collection<String> rejectJars) {
+    final Map<String, Set<String>> stereotypes = new LinkedHashMap<>();
+    final List<Pattern> rejects = new ArrayList<>(rejectJars.size());
+    for (String rejectJar : rejectJars) {
+      rejects.add(Pattern.compile(Pattern.quote(rejectJar).replace("*", "\\E.*\\Q")));
+    }
+    try {
+      final Enumeration<URL> resources = classLoader.getResources(INDEX_LOCATION);
+      if (!resources.hasMoreElements()) {
+        return null;
+      }
+      while (resources.hasMoreElements()) {
+        final URL url = resources.nextElement();
+        if (!rejected(url, rejects)) {
+          read(url, stereotypes);
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Unable to read bean index {}, falling back to classpath scanning", INDEX_LOCATION, e);
+      return null;
+    }
+    return new BeanIndex(stereotypes);
+  }
+
+  private static boolean rejected(URL url, List<Pattern> rejects) {
+    if (rejects.isEmpty()) {
+      return false;
+    }
+    final String path = url.toString();
+    final int end = path.lastIndexOf("!/");
+    if (end < 0) {
+      return false;
+    }
+    final String jar = path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+    for (Pattern reject : rejects) {
+      if (reject.matcher(jar).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void read(URL url, Map<String, Set<String>> stereotypes) throws IOException {
+    try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        int idx = line.indexOf('=');
+        if (idx <= 0) {
+          continue;
+        }
+        final String className = line.substring(0, idx).trim();
+        final Set<String> values = stereotypes.computeIfAbsent(className, key -> new LinkedHashSet<>());
+        values.addAll(Arrays.asList(line.substring(idx + 1).trim().split(",")));
+      }
+    }
+  }
+
+  /**
+   * Get the classes in the given packages carrying the stereotype, which is
+   * an annotation or interface name
+   *
+   * @param packages   packages, all packages if empty
+   * @param stereotype annotation or interface name
+   * @return class names
+   */
+  public List<String> candidates(Collection<String> packages, String stereotype) {
+    return candidates(packages, Collections.emptySet(), stereotype);
+  }
+
+  /**
+   * Get the classes in the given packages, but not in the rejected packages,
+   * carrying the stereotype, which is an annotation or interface name
+   *
+   * @param packages       packages, all packages if empty
+   * @param rejectPackages rejected packages
+   * @param stereotype     annotation or interface name
+   * @return class names
+   */
+  public List<String> candidates(Collection<String> packages, Collection<String> rejectPackages,
+                                 String stereotype) {
+    final List<String> candidates = new ArrayList<>();
+    for (Map.Entry<String, Set<String>> entry : stereotypes.entrySet()) {
+      if (entry.getValue().contains(stereotype) && inPackages(entry.getKey(), packages)
+              && (rejectPackages.isEmpty() || !inPackages(entry.getKey(), rejectPackages))) {
+        candidates.add(entry.getKey());
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * Get all indexed class names
+   *
+   * @return class names
+   */
+  public Set<String> classNames() {
+    return Collections.unmodifiableSet(stereotypes.keySet());
+  }
+
+  private static boolean inPackages(String className, Collection<String> packages) {
+    if (packages.isEmpty()) {
+      return true;
+    }
+    for (String pkg : packages) {
+      if (className.startsWith(pkg + ".")) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
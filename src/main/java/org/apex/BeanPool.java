@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of a {@link org.apex.annotation.Pooled} bean. {@link #borrow()}
+ * hands out an idle instance, or creates and injects a new one when none is
+ * idle, so borrowing never blocks. {@link #release(Object)} keeps the
+ * instance for the next borrower unless the pool already holds
+ * {@link #maxSize()} idle instances, in which case it is dropped. Instances
+ * are returned as they are; resetting their state is up to the caller.
+ *
+ * @author WangYi
+ * @since 2020/11/22
+ */
+public final class BeanPool<T> {
+  private final String beanName;
+  private final int maxSize;
+  private final Supplier<T> factory;
+  private final BlockingQueue<T> idle;
+
+  BeanPool(String beanName, int maxSize, Supplier<T> factory) {
+    Validate.isTrue(maxSize > 0, "pool size of %s must be positive", beanName);
+    this.beanName = beanName;
+    this.maxSize = maxSize;
+    this.factory = factory;
+    this.idle = new ArrayBlockingQueue<>(maxSize);
+  }
+
+  /**
+   * Borrow an instance, idle or new
+   *
+   * @return bean, to be released after use
+   */
+  public T borrow() {
+    final T bean = idle.poll();
+    return bean != null ? bean : factory.get();
+  }
+
+  /**
+   * Return a borrowed instance to the pool
+   *
+   * @param bean bean
+   * @return true if the instance is kept, false if the pool is full
+   */
+  public boolean release(T bean) {
+    Validate.notNull(bean, "bean must not be null");
+    return idle.offer(bean);
+  }
+
+  public String beanName() {
+    return beanName;
+  }
+
+  public int maxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Get the number of idle instances
+   *
+   * @return idle instances
+   */
+  public int idle() {
+    return idle.size();
+  }
+
+  @Override
+  public String toString() {
+    return "BeanPool(" + beanName + ", " + idle.size() + "/" + maxSize + ")";
+  }
+}
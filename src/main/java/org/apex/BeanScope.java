@@ -0,0 +1,59 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Strategy of a scope annotation, an annotation marked with
+ * {@link org.apex.annotation.Scope}: decides where the instances of the beans
+ * in the scope live and when they die. Implementations are loaded with
+ * {@link java.util.ServiceLoader}, one instance per factory, or registered
+ * through {@link AbstractFactory#registerScope(BeanScope)}. Beans whose
+ * scope has no strategy are singletons.
+ * <p>
+ * Scoped beans are looked up on every {@code getBean} call and injection, so
+ * {@link #get(ScopedBean)} should not allocate once the instance exists.
+ *
+ * @author WangYi
+ * @since 2020/11/23
+ */
+public interface BeanScope {
+  /**
+   * Get the scope annotation implemented by this strategy
+   *
+   * @return scope annotation
+   */
+  Class<? extends Annotation> annotation();
+
+  /**
+   * Get the instance of the bean in the current scope, created with
+   * {@link ScopedBean#create()} on first access
+   *
+   * @param bean scoped bean
+   * @return bean instance
+   * @throws org.apex.exception.OutOfScopeException if the scope is not active
+   */
+  Object get(ScopedBean bean);
+}
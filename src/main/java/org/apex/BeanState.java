@@ -0,0 +1,54 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+/**
+ * The lifecycle of a bean in an {@link AbstractFactory}. A bean moves
+ * forward once: it is defined, created, injected, then ready. An instance
+ * that is replaced or removed goes back to defined. Only a ready
+ * bean is handed out by lookups without further work; a bean that is not
+ * ready yet is only visible to the thread wiring it, to resolve circular
+ * references.
+ *
+ * @author WangYi
+ * @since 2020/11/19
+ */
+public enum BeanState {
+  /**
+   * Registered as a definition, no instance yet
+   */
+  DEFINED,
+  /**
+   * Created and published, not injected yet
+   */
+  INSTANTIATED,
+  /**
+   * Fields and values applied, inject methods being invoked
+   */
+  INJECTED,
+  /**
+   * Fully wired, returned by lookups as is
+   */
+  READY
+}
@@ -0,0 +1,302 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.apex.exception.QualifierNotUniqueException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * The dependency graph of the registered bean definitions, built from their
+ * constructor, field, method and factory method dependencies before any bean
+ * is created. Each dependency is resolved to a definition the way the
+ * factory resolves it at runtime: by qualifier, then by type name, then to
+ * the single definition assignable to its type, found through a
+ * {@link TypeIndex}, or the single one of them carrying the qualifier. Dependencies that resolve to
+ * no definition or to several are reported as problems.
+ * <p>
+ * The definitions are ordered so that every bean comes after the beans it
+ * depends on, which lets the context create and inject each bean exactly
+ * once. Cycles are allowed between injected fields and methods, the bean
+ * closing the cycle is then published before it is injected. The beans of a
+ * cycle form a component, which has to be wired by a single thread.
+ *
+ * @author WangYi
+ * @since 2020/11/17
+ */
+public final class DependencyGraph {
+  private final Map<String, BeanDefinition> beanDefinitions = new TreeMap<>();
+  private final TypeIndex typeIndex = new TypeIndex();
+  private final Map<String, Set<String>> edges = new LinkedHashMap<>();
+  private final List<String> problems = new ArrayList<>();
+  private final List<BeanDefinition> order = new ArrayList<>();
+  private final List<List<BeanDefinition>> components = new ArrayList<>();
+
+  private DependencyGraph(BeanDefinitionRegistry registry, Predicate<BeanDefinition> shared) {
+    for (BeanDefinition beanDefinition : registry.beanDefinitions()) {
+      beanDefinitions.put(beanDefinition.name(), beanDefinition);
+      typeIndex.add(beanDefinition.name(), beanDefinition.beanClass());
+    }
+    for (BeanDefinition beanDefinition : beanDefinitions.values()) {
+      final Set<String> targets = new LinkedHashSet<>();
+      for (BeanDefinition.Dependency dependency : beanDefinition.dependencies()) {
+        final String target = resolve(beanDefinition, dependency);
+        // a provider looks its bean up when called, so it doesn't order the wiring
+        if (target != null && !dependency.deferred() && !target.equals(beanDefinition.name())) {
+          targets.add(target);
+          checkScope(beanDefinition, dependency, beanDefinitions.get(target), shared);
+        }
+      }
+      edges.put(beanDefinition.name(), targets);
+    }
+    final Set<String> visiting = new LinkedHashSet<>();
+    final Set<String> visited = new LinkedHashSet<>();
+    for (String beanName : beanDefinitions.keySet()) {
+      visit(beanName, visiting, visited);
+    }
+    final Map<String, Integer> position = new HashMap<>();
+    for (BeanDefinition beanDefinition : order) {
+      position.put(beanDefinition.name(), position.size());
+    }
+    final Map<String, Integer> index = new HashMap<>();
+    for (String beanName : beanDefinitions.keySet()) {
+      if (!index.containsKey(beanName)) {
+        connect(beanName, index, position);
+      }
+    }
+  }
+
+  /**
+   * Build the graph of the definitions currently registered, every bean
+   * but prototypes being a singleton
+   *
+   * @param registry bean definition registry
+   * @return dependency graph
+   */
+  public static DependencyGraph create(BeanDefinitionRegistry registry) {
+    return create(registry, beanDefinition -> !beanDefinition.prototype());
+  }
+
+  /**
+   * Build the graph of the definitions currently registered. A bean that is
+   * neither shared nor a prototype lives in a scope, and a dependency on it
+   * that is injected once into a bean living longer is reported as a problem.
+   *
+   * @param registry bean definition registry
+   * @param shared   whether a bean is a singleton
+   * @return dependency graph
+   */
+  public static DependencyGraph create(BeanDefinitionRegistry registry, Predicate<BeanDefinition> shared) {
+    return new DependencyGraph(registry, shared);
+  }
+
+  /**
+   * A scoped bean injected directly into a singleton, or into a bean of
+   * another scope, is looked up once: out of its scope that fails, in it the
+   * instance of that scope is kept for good
+   */
+  private void checkScope(BeanDefinition beanDefinition, BeanDefinition.Dependency dependency,
+                          BeanDefinition target, Predicate<BeanDefinition> shared) {
+    if (target.prototype() || shared.test(target) || beanDefinition.prototype()
+            || beanDefinition.scope() == target.scope()) {
+      return;
+    }
+    problems.add("Scoped dependency " + dependency + " of " + beanDefinition.name() + " is injected once into a bean"
+            + " outliving its @" + target.scope().getSimpleName() + " scope, inject a Provider or Supplier of it");
+  }
+
+  private String resolve(BeanDefinition beanDefinition, BeanDefinition.Dependency dependency) {
+    if (dependency.qualifier() != null && beanDefinitions.containsKey(dependency.qualifier())) {
+      return dependency.qualifier();
+    }
+    if (beanDefinitions.containsKey(dependency.type().getName())) {
+      return dependency.type().getName();
+    }
+    final List<String> candidates = typeIndex.names(dependency.type());
+    try {
+      final String candidate = TypeIndex.select(dependency.type(), candidates, dependency.qualifier(),
+              beanDefinitions::get);
+      if (candidate != null || dependency.optional()) {
+        return candidate;
+      }
+      problems.add("Unresolved dependency " + dependency + " of " + beanDefinition.name()
+              + ", no bean of type " + dependency.type().getName());
+    } catch (QualifierNotUniqueException e) {
+      problems.add("Ambiguous dependency " + dependency + " of " + beanDefinition.name() + ", " + e.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Add a bean to the order after the beans it depends on. The path is kept
+   * on an explicit stack, a long chain of dependencies doesn't overflow the
+   * thread's one.
+   */
+  private void visit(String beanName, Set<String> visiting, Set<String> visited) {
+    if (visited.contains(beanName)) {
+      return;
+    }
+    final Deque<Frame> path = new ArrayDeque<>();
+    visiting.add(beanName);
+    path.push(new Frame(beanName, 0));
+    while (!path.isEmpty()) {
+      final Frame frame = path.peek();
+      if (frame.targets.hasNext()) {
+        final String target = frame.targets.next();
+        // unless visited, or a cycle closed by a bean that is still being visited
+        if (!visited.contains(target) && visiting.add(target)) {
+          path.push(new Frame(target, 0));
+        }
+        continue;
+      }
+      path.pop();
+      visiting.remove(frame.beanName);
+      visited.add(frame.beanName);
+      order.add(beanDefinitions.get(frame.beanName));
+    }
+  }
+
+  /**
+   * Find the strongly connected components reachable from a bean, Tarjan's
+   * way, with an explicit stack like {@link #visit}. A component is complete
+   * once its first visited bean is done, after the components it depends
+   * on, so they come out in wiring order.
+   */
+  private void connect(String beanName, Map<String, Integer> index, Map<String, Integer> position) {
+    final Deque<Frame> path = new ArrayDeque<>();
+    final List<String> stack = new ArrayList<>();
+    final Set<String> onStack = new HashSet<>();
+    path.push(enter(beanName, index, stack, onStack));
+    while (!path.isEmpty()) {
+      final Frame frame = path.peek();
+      if (frame.targets.hasNext()) {
+        final String target = frame.targets.next();
+        if (!index.containsKey(target)) {
+          path.push(enter(target, index, stack, onStack));
+        } else if (onStack.contains(target)) {
+          frame.low = Math.min(frame.low, index.get(target));
+        }
+        continue;
+      }
+      path.pop();
+      if (frame.low == frame.index) {
+        final List<String> members = stack.subList(stack.lastIndexOf(frame.beanName), stack.size());
+        final List<BeanDefinition> component = new ArrayList<>(members.size());
+        for (String member : members) {
+          component.add(beanDefinitions.get(member));
+          onStack.remove(member);
+        }
+        members.clear();
+        // in wiring order, so that a cycle is wired the way it is sequentially
+        component.sort(Comparator.comparingInt(member -> position.get(member.name())));
+        components.add(Collections.unmodifiableList(component));
+      }
+      final Frame caller = path.peek();
+      if (caller != null) {
+        caller.low = Math.min(caller.low, frame.low);
+      }
+    }
+  }
+
+  private Frame enter(String beanName, Map<String, Integer> index, List<String> stack, Set<String> onStack) {
+    final int beanIndex = index.size();
+    index.put(beanName, beanIndex);
+    stack.add(beanName);
+    onStack.add(beanName);
+    return new Frame(beanName, beanIndex);
+  }
+
+  /**
+   * Get the definitions ordered so that each one comes after its
+   * dependencies, cycles aside
+   *
+   * @return bean definitions in wiring order
+   */
+  public List<BeanDefinition> order() {
+    return Collections.unmodifiableList(order);
+  }
+
+  /**
+   * Get the strongly connected components of the graph: a bean on its own,
+   * or the beans of a cycle, which depend on each other directly or not.
+   * Each component comes after the components it depends on, its beans in
+   * wiring order.
+   *
+   * @return components in wiring order
+   */
+  public List<List<BeanDefinition>> components() {
+    return Collections.unmodifiableList(components);
+  }
+
+  /**
+   * Get the names of the beans a bean depends on
+   *
+   * @param beanName bean name
+   * @return bean names, empty if the bean is not part of the graph
+   */
+  public Set<String> dependencies(String beanName) {
+    final Set<String> targets = edges.get(beanName);
+    return targets != null ? Collections.unmodifiableSet(targets) : Collections.emptySet();
+  }
+
+  /**
+   * Get the unresolved and ambiguous dependencies found while building the graph
+   *
+   * @return problems
+   */
+  public List<String> problems() {
+    return Collections.unmodifiableList(problems);
+  }
+
+  /**
+   * A bean being visited, with the dependencies left to visit
+   */
+  private final class Frame {
+    private final String beanName;
+    private final int index;
+    private final Iterator<String> targets;
+    private int low;
+
+    private Frame(String beanName, int index) {
+      this.beanName = beanName;
+      this.index = index;
+      this.targets = edges.get(beanName).iterator();
+      this.low = index;
+    }
+  }
+}
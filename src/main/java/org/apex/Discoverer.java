@@ -24,67 +24,354 @@
 package org.apex;
 
 import io.github.classgraph.ClassGraph;
-import io.github.classgraph.ClassInfo;
-import io.github.classgraph.ClassInfoList;
 import io.github.classgraph.ScanResult;
+import org.apex.annotation.ConfigBean;
+import org.apex.annotation.Lazy;
+import org.apex.exception.BeanInstantiationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
+ * Discovers beans in a single pass over the candidate classes. Each candidate
+ * goes through four stages:
+ * <ol>
+ *   <li>match: the name is taken from the bean index, the scan cache or a
+ *   classpath scan, whose {@link ScanResult} is closed right after</li>
+ *   <li>load: the class is loaded once</li>
+ *   <li>filter: a class carrying a type annotation is accepted if any of
+ *   the {@link TypeFilter}s accepts it, or if there are none</li>
+ *   <li>define: a {@link BeanDefinition} is created, nothing is instantiated</li>
+ * </ol>
+ * Type filters found on the classpath go through the pipeline first and are
+ * instantiated, as they take part in the filter stage of all other candidates.
+ * A type filter carrying a type annotation is a bean as well.
+ *
  * @author WangYi
  * @since 2020/9/24
  */
 public class Discoverer {
-  public static Map<Object, Class<?>> discover(Apex apex) {
-    Map<Object, Class<?>> result = new ConcurrentHashMap<>(64);
-
-    final Set<Class<? extends Annotation>> annotations = apex.typeAnnotations();
-    ScanResult scanResult = new ClassGraph().enableAllInfo().acceptPackages(
-            apex.packages().toArray(new String[0])).scan();
-    if (scanResult.getAllClasses().isEmpty()) {
-      return result;
-    }
-    ClassInfoList allClasses = scanResult.getAllClasses();
-    allClasses.filter(classInfo -> ReflectionHelper.isNormal(classInfo.loadClass()));
-
-    for (ClassInfo classInfo : allClasses) {
-      if (classInfo.implementsInterface(TypeFilter.class.getName())) {
-        Object typeFilter = ReflectionHelper.newInstance(classInfo.loadClass());
-        apex.typeFilters().add((TypeFilter) typeFilter);
+  private static final Logger log = LoggerFactory.getLogger(Discoverer.class);
+
+  public static List<BeanDefinition> discover(Apex apex) {
+    return discover(apex, new DiscoveryStats());
+  }
+
+  /**
+   * Discover beans and record the counters and timings of every stage
+   *
+   * @param apex  apex
+   * @param stats discovery stats
+   * @return definitions of the discovered beans
+   */
+  public static List<BeanDefinition> discover(Apex apex, DiscoveryStats stats) {
+    final ExecutorService scanPool = apex.parallelScan() && apex.scanThreads() > 0
+            ? Executors.newFixedThreadPool(apex.scanThreads(), new ScanThreadFactory())
+            : null;
+    final Executor executor = scanPool != null ? scanPool
+            : apex.parallelScan() ? apex.executor() : Runnable::run;
+    try {
+      final long start = System.nanoTime();
+      final Candidates candidates = match(apex, scanPool);
+      stats.matched(candidates.size(), System.nanoTime() - start);
+      final List<BeanDefinition> beanDefinitions = define(apex, candidates, executor, stats);
+      log.debug("{}", stats);
+      return beanDefinitions;
+    } finally {
+      if (scanPool != null) {
+        scanPool.shutdown();
       }
+    }
+  }
 
-      Set<Class<?>> implInterfaces = apex.implInterfaces();
-      for (Class<?> implInterface : implInterfaces) {
-        if (classInfo.implementsInterface(implInterface.getName())) {
-          Class<?> loadClass = classInfo.loadClass();
-          result.put(ReflectionHelper.newInstance(loadClass), loadClass);
-        }
+  /**
+   * Discover beans from the compile time index without scanning the classpath
+   *
+   * @param apex      apex
+   * @param beanIndex merged bean index
+   * @return definitions of the discovered beans
+   */
+  public static List<BeanDefinition> discover(Apex apex, BeanIndex beanIndex) {
+    final DiscoveryStats stats = new DiscoveryStats();
+    final long start = System.nanoTime();
+    final Candidates candidates = match(apex, beanIndex);
+    stats.matched(candidates.size(), System.nanoTime() - start);
+    return define(apex, candidates, Runnable::run, stats);
+  }
+
+  private static Candidates match(Apex apex, ExecutorService scanPool) {
+    if (apex.beanIndex()) {
+      final BeanIndex beanIndex = BeanIndex.load(ReflectionHelper.defaultClassLoader(), apex.rejectJars());
+      if (beanIndex != null) {
+        log.debug("Discovering beans from {}", BeanIndex.INDEX_LOCATION);
+        return match(apex, beanIndex);
       }
     }
-    for (Class<? extends Annotation> annotation : annotations) {
-      final ClassInfoList classesWithAnnotation =
-              scanResult.getClassesWithAnnotation(annotation.getName());
-      for (ClassInfo classInfo : classesWithAnnotation) {
-        if (!ReflectionHelper.isNormal(classInfo.loadClass())) {
-          continue;
-        }
-        Class<?> aClass = classInfo.loadClass();
-        if (apex.typeFilters().isEmpty()) {
-          result.put(ReflectionHelper.newInstance(aClass), aClass);
-        } else {
-          for (TypeFilter typeFilter : apex.typeFilters()) {
-            if (!typeFilter.filter(classInfo.loadClass())) {
-              continue;
-            }
-            result.put(ReflectionHelper.newInstance(aClass), aClass);
-          }
+    ScanCache scanCache = null;
+    if (apex.scanCache() != null) {
+      scanCache = ScanCache.create(apex, ScanCache.classpathFiles(ReflectionHelper.defaultClassLoader()));
+      final ScanCache.Entry entry = scanCache.read();
+      if (entry != null) {
+        log.debug("Discovering beans from scan cache {}", apex.scanCache());
+        final Candidates candidates = new Candidates(null);
+        candidates.add(entry.typeFilters(), Kind.TYPE_FILTER);
+        candidates.add(entry.beans(), Kind.ACCEPTED);
+        return candidates;
+      }
+    }
+    try (ScanResult scanResult = scan(apex, classGraph(apex), scanPool)) {
+      final Candidates candidates = new Candidates(scanCache);
+      candidates.add(scanResult.getClassesImplementing(TypeFilter.class.getName()).getNames(),
+              Kind.TYPE_FILTER);
+      for (Class<?> implInterface : apex.implInterfaces()) {
+        candidates.add(scanResult.getClassesImplementing(implInterface.getName()).getNames(),
+                Kind.IMPLEMENTATION);
+      }
+      for (Class<? extends Annotation> annotation : apex.typeAnnotations()) {
+        candidates.add(scanResult.getClassesWithAnnotation(annotation.getName()).getNames(),
+                Kind.ANNOTATED);
+      }
+      return candidates;
+    }
+  }
+
+  private static Candidates match(Apex apex, BeanIndex beanIndex) {
+    final Set<String> packages = apex.packages();
+    final Set<String> rejectPackages = apex.rejectPackages();
+    final Candidates candidates = new Candidates(null);
+    candidates.add(beanIndex.candidates(packages, rejectPackages, TypeFilter.class.getName()),
+            Kind.TYPE_FILTER);
+    for (Class<?> implInterface : apex.implInterfaces()) {
+      candidates.add(beanIndex.candidates(packages, rejectPackages, implInterface.getName()),
+              Kind.IMPLEMENTATION);
+    }
+    for (Class<? extends Annotation> annotation : apex.typeAnnotations()) {
+      candidates.add(beanIndex.candidates(packages, rejectPackages, annotation.getName()),
+              Kind.ANNOTATED);
+    }
+    return candidates;
+  }
+
+  /**
+   * Discovery only asks which classes carry an annotation or implement an
+   * interface, so the scan requests class and annotation info only: no field,
+   * method or annotation parameter info is kept in the {@link ScanResult}.
+   */
+  private static ClassGraph classGraph(Apex apex) {
+    return new ClassGraph()
+            .enableClassInfo()
+            .enableAnnotationInfo()
+            .ignoreClassVisibility()
+            .acceptPackages(apex.packages().toArray(new String[0]))
+            .rejectPackages(apex.rejectPackages().toArray(new String[0]))
+            .rejectJars(apex.rejectJars().toArray(new String[0]));
+  }
+
+  private static ScanResult scan(Apex apex, ClassGraph classGraph, ExecutorService scanPool) {
+    if (!apex.parallelScan()) {
+      return scan(classGraph, ClassGraph::scan);
+    }
+    if (scanPool != null) {
+      return scan(classGraph, cg -> cg.scan(scanPool, apex.scanThreads()));
+    }
+    final Executor executor = apex.executor();
+    final int parallelism = executor instanceof ForkJoinPool
+            ? ((ForkJoinPool) executor).getParallelism()
+            : Runtime.getRuntime().availableProcessors();
+    return scan(classGraph, cg -> executor instanceof ExecutorService
+            ? cg.scan((ExecutorService) executor, parallelism)
+            : cg.scan(parallelism));
+  }
+
+  /**
+   * Run the scan and report its duration and the heap retained by the
+   * {@link ScanResult}. The heap figure is the change of used heap and only
+   * approximate, as no garbage collection is forced.
+   */
+  private static ScanResult scan(ClassGraph classGraph, Function<ClassGraph, ScanResult> scanner) {
+    final Runtime runtime = Runtime.getRuntime();
+    final long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+    final long start = System.nanoTime();
+    final ScanResult scanResult = scanner.apply(classGraph);
+    if (log.isDebugEnabled()) {
+      final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      final long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+      log.debug("Scanned {} classes in {} ms, scan result heap ~{} KB", scanResult.getAllClasses().size(),
+              elapsed, Math.max(0, usedAfter - usedBefore) / 1024);
+    }
+    return scanResult;
+  }
+
+  /**
+   * Run the load, filter and define stages for every candidate. The accepted
+   * classes are written to the scan cache, if the candidates came from a scan
+   * and the cache is enabled.
+   */
+  private static List<BeanDefinition> define(Apex apex, Candidates candidates,
+                                             Executor executor, DiscoveryStats stats) {
+    final ClassLoader classLoader = ReflectionHelper.defaultClassLoader();
+    // the discovered filters are not added to the settings, which only hold
+    // those of the user and stay the same from one discovery to the next
+    final List<TypeFilter> typeFilters = new ArrayList<>(apex.typeFilters());
+    for (Object typeFilter : run(candidates.typeFilters(), cls -> true,
+            ReflectionHelper::newInstance, classLoader, executor, stats)) {
+      typeFilters.add((TypeFilter) typeFilter);
+    }
+    final TypeFilter typeFilter = TypeFilter.any(typeFilters);
+    final List<BeanDefinition> beanDefinitions = run(candidates.beans(), typeFilter,
+            cls -> BeanDefinition.create(cls, lazy(apex, cls)), classLoader, executor, stats);
+    if (candidates.scanCache != null) {
+      final List<String> typeFilterNames = new ArrayList<>();
+      for (Candidate candidate : candidates.typeFilters()) {
+        typeFilterNames.add(candidate.name);
+      }
+      final List<String> beans = new ArrayList<>(beanDefinitions.size());
+      for (BeanDefinition beanDefinition : beanDefinitions) {
+        beans.add(beanDefinition.name());
+      }
+      candidates.scanCache.write(typeFilterNames, beans);
+    }
+    return beanDefinitions;
+  }
+
+  private static <T> List<T> run(List<Candidate> candidates, TypeFilter typeFilter,
+                                 Function<Class<?>, T> definer, ClassLoader classLoader,
+                                 Executor executor, DiscoveryStats stats) {
+    final List<CompletableFuture<T>> futures = new ArrayList<>(candidates.size());
+    for (Candidate candidate : candidates) {
+      futures.add(CompletableFuture.supplyAsync(() ->
+              run(candidate, typeFilter, definer, classLoader, stats), executor));
+    }
+    final List<T> definitions = new ArrayList<>(futures.size());
+    try {
+      for (CompletableFuture<T> future : futures) {
+        final T definition = future.join();
+        if (definition != null) {
+          definitions.add(definition);
         }
       }
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new BeanInstantiationException(e.getCause());
+    }
+    return definitions;
+  }
+
+  private static <T> T run(Candidate candidate, TypeFilter typeFilter, Function<Class<?>, T> definer,
+                           ClassLoader classLoader, DiscoveryStats stats) {
+    final long start = System.nanoTime();
+    final Class<?> cls = ReflectionHelper.forName(candidate.name, classLoader);
+    final long loaded = System.nanoTime();
+    stats.loaded(loaded - start);
+
+    final boolean accepted = candidate.kind == Kind.ACCEPTED || (ReflectionHelper.isNormal(cls)
+            && (candidate.kind != Kind.ANNOTATED || typeFilter.filter(cls)));
+    final long filtered = System.nanoTime();
+    stats.filtered(accepted, filtered - loaded);
+    if (!accepted) {
+      return null;
+    }
+
+    final T definition = definer.apply(cls);
+    stats.defined(System.nanoTime() - filtered);
+    return definition;
+  }
+
+  /**
+   * Whether the bean is created on first use. {@link ConfigBean} classes are
+   * always eager since their {@link org.apex.annotation.Bean} methods are
+   * invoked at startup.
+   */
+  private static boolean lazy(Apex apex, Class<?> cls) {
+    if (cls.isAnnotationPresent(ConfigBean.class)) {
+      return false;
+    }
+    final Lazy lazy = cls.getAnnotation(Lazy.class);
+    return lazy != null ? lazy.value() : apex.lazy();
+  }
+
+  private enum Kind {
+    /** a type filter implementation, defined before all other candidates */
+    TYPE_FILTER,
+    /** an implementation of an impl interface, not subject to type filters */
+    IMPLEMENTATION,
+    /** a class carrying a type annotation, subject to type filters */
+    ANNOTATED,
+    /** a class already accepted by an earlier scan */
+    ACCEPTED
+  }
+
+  private static class Candidate {
+    private final String name;
+    private final Kind kind;
+
+    Candidate(String name, Kind kind) {
+      this.name = name;
+      this.kind = kind;
+    }
+  }
+
+  /**
+   * Candidate names in match order. A bean class is matched at most once: a
+   * class both implementing an impl interface and carrying a type annotation
+   * keeps the first match, as impl interfaces are matched before annotations.
+   * Type filters are kept apart, so that a type filter can be a bean too.
+   */
+  private static class Candidates {
+    private final Map<String, Candidate> typeFilters = new LinkedHashMap<>();
+    private final Map<String, Candidate> beans = new LinkedHashMap<>();
+    private final ScanCache scanCache;
+
+    Candidates(ScanCache scanCache) {
+      this.scanCache = scanCache;
+    }
+
+    void add(List<String> names, Kind kind) {
+      final Map<String, Candidate> candidates = kind == Kind.TYPE_FILTER ? typeFilters : beans;
+      for (String name : names) {
+        candidates.putIfAbsent(name, new Candidate(name, kind));
+      }
+    }
+
+    int size() {
+      return typeFilters.size() + beans.size();
+    }
+
+    List<Candidate> typeFilters() {
+      return new ArrayList<>(typeFilters.values());
+    }
+
+    List<Candidate> beans() {
+      return new ArrayList<>(beans.values());
+    }
+  }
+
+  private static class ScanThreadFactory implements ThreadFactory {
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      final Thread thread = new Thread(runnable, "apex-scan-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
     }
-    scanResult.close();
-    return result;
   }
 }
@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timings of the discovery pipeline stages. Every candidate
+ * class goes through match, load, filter and define exactly once; the
+ * timings are summed over all threads taking part in discovery.
+ *
+ * @author WangYi
+ * @since 2020/11/9
+ */
+public class DiscoveryStats {
+  private final LongAdder matched = new LongAdder();
+  private final LongAdder loaded = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder defined = new LongAdder();
+  private final LongAdder matchNanos = new LongAdder();
+  private final LongAdder loadNanos = new LongAdder();
+  private final LongAdder filterNanos = new LongAdder();
+  private final LongAdder defineNanos = new LongAdder();
+
+  void matched(int count, long nanos) {
+    matched.add(count);
+    matchNanos.add(nanos);
+  }
+
+  void loaded(long nanos) {
+    loaded.increment();
+    loadNanos.add(nanos);
+  }
+
+  void filtered(boolean accepted, long nanos) {
+    if (!accepted) {
+      rejected.increment();
+    }
+    filterNanos.add(nanos);
+  }
+
+  void defined(long nanos) {
+    defined.increment();
+    defineNanos.add(nanos);
+  }
+
+  /**
+   * Get the number of candidate classes matched by the index, cache or scan
+   *
+   * @return matched classes
+   */
+  public long matched() {
+    return matched.sum();
+  }
+
+  /**
+   * Get the number of loaded classes
+   *
+   * @return loaded classes
+   */
+  public long loaded() {
+    return loaded.sum();
+  }
+
+  /**
+   * Get the number of classes rejected by the filter stage
+   *
+   * @return rejected classes
+   */
+  public long rejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * Get the number of bean definitions created
+   *
+   * @return defined beans
+   */
+  public long defined() {
+    return defined.sum();
+  }
+
+  public long matchTime(TimeUnit unit) {
+    return unit.convert(matchNanos.sum(), TimeUnit.NANOSECONDS);
+  }
+
+  public long loadTime(TimeUnit unit) {
+    return unit.convert(loadNanos.sum(), TimeUnit.NANOSECONDS);
+  }
+
+  public long filterTime(TimeUnit unit) {
+    return unit.convert(filterNanos.sum(), TimeUnit.NANOSECONDS);
+  }
+
+  public long defineTime(TimeUnit unit) {
+    return unit.convert(defineNanos.sum(), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public String toString() {
+    return "DiscoveryStats{" +
+            "matched=" + matched() + " in " + matchTime(TimeUnit.MILLISECONDS) + "ms" +
+            ", loaded=" + loaded() + " in " + loadTime(TimeUnit.MILLISECONDS) + "ms" +
+            ", rejected=" + rejected() + " in " + filterTime(TimeUnit.MILLISECONDS) + "ms" +
+            ", defined=" + defined() + " in " + defineTime(TimeUnit.MILLISECONDS) + "ms" +
+            '}';
+  }
+}
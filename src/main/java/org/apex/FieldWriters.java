@@ -0,0 +1,169 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.asm.AsmVisitorWrapper;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ClassInjector;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.dynamic.scaffold.TypeValidation;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.bytecode.ByteCodeAppender;
+import net.bytebuddy.jar.asm.ClassWriter;
+import net.bytebuddy.jar.asm.Label;
+import net.bytebuddy.jar.asm.MethodVisitor;
+import net.bytebuddy.jar.asm.Opcodes;
+import net.bytebuddy.jar.asm.Type;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.bytebuddy.matcher.ElementMatchers.named;
+
+/**
+ * Generates a {@link FieldWriter} per class with ByteBuddy. The writer is
+ * defined in the package and class loader of the bean, so it can write
+ * public, protected and package-private fields directly. Private, final and
+ * static fields cannot be written from another class and are left to the
+ * reflective path, as are classes of the bootstrap class loader.
+ *
+ * @author WangYi
+ * @since 2020/11/17
+ */
+public final class FieldWriters {
+  private static final Logger log = LoggerFactory.getLogger(FieldWriters.class);
+  private static final String SUFFIX = "$ApexFieldWriter$";
+  private static final AtomicInteger COUNTER = new AtomicInteger();
+
+  private FieldWriters() {}
+
+  /**
+   * Whether a generated writer can write the field
+   *
+   * @param field field
+   * @return true if the field is neither private, final nor static
+   */
+  public static boolean writable(Field field) {
+    final int modifiers = field.getModifiers();
+    return !Modifier.isPrivate(modifiers) && !Modifier.isFinal(modifiers) && !Modifier.isStatic(modifiers);
+  }
+
+  /**
+   * Generate a writer for the fields of a class
+   *
+   * @param type   class declaring the fields
+   * @param fields fields, addressed by their index; fields that are not {@link #writable(Field)} are skipped
+   * @return writer, or null if the class cannot have one
+   */
+  public static FieldWriter generate(Class<?> type, List<Field> fields) {
+    Validate.notNull(type, "type must not be null");
+    Validate.notNull(fields, "fields must not be null");
+    if (type.getClassLoader() == null || fields.stream().noneMatch(FieldWriters::writable)) {
+      return null;
+    }
+    final String name = type.getName() + SUFFIX + COUNTER.incrementAndGet();
+    try {
+      final DynamicType.Unloaded<FieldWriter> unloaded = new ByteBuddy()
+              .with(TypeValidation.DISABLED)
+              .subclass(FieldWriter.class)
+              .name(name)
+              .method(named("write"))
+              .intercept(new Implementation.Simple(new WriteAppender(fields)))
+              .visit(new AsmVisitorWrapper.ForDeclaredMethods().writerFlags(ClassWriter.COMPUTE_FRAMES))
+              .make();
+      final Class<?> loaded;
+      if (ClassInjector.UsingLookup.isAvailable()) {
+        loaded = ClassInjector.UsingLookup.of(MethodHandles.lookup()).in(type)
+                .injectRaw(Collections.singletonMap(name, unloaded.getBytes())).get(name);
+      } else {
+        loaded = unloaded.load(type.getClassLoader(), ClassLoadingStrategy.Default.INJECTION).getLoaded();
+      }
+      return (FieldWriter) loaded.getConstructor().newInstance();
+    } catch (Exception | LinkageError e) {
+      log.debug("Cannot generate a field writer for {}, falling back to reflection", type.getName(), e);
+      return null;
+    }
+  }
+
+  /**
+   * Emits {@code switch (index) { case i: ((T) target).field = (F) value; return; }}
+   * followed by throwing {@link IllegalArgumentException}
+   */
+  private static class WriteAppender implements ByteCodeAppender {
+    private final List<Field> fields;
+
+    WriteAppender(List<Field> fields) {
+      this.fields = fields;
+    }
+
+    @Override
+    public Size apply(MethodVisitor methodVisitor, Implementation.Context context, MethodDescription method) {
+      final Label unknown = new Label();
+      final Label[] labels = new Label[fields.size()];
+      for (int i = 0; i < labels.length; i++) {
+        labels[i] = writable(fields.get(i)) ? new Label() : unknown;
+      }
+      methodVisitor.visitVarInsn(Opcodes.ILOAD, 2);
+      methodVisitor.visitTableSwitchInsn(0, labels.length - 1, unknown, labels);
+      for (int i = 0; i < labels.length; i++) {
+        if (labels[i] == unknown) {
+          continue;
+        }
+        final Field field = fields.get(i);
+        final String owner = Type.getInternalName(field.getDeclaringClass());
+        methodVisitor.visitLabel(labels[i]);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+        methodVisitor.visitTypeInsn(Opcodes.CHECKCAST, owner);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 3);
+        if (field.getType().isPrimitive()) {
+          final Class<?> wrapper = ClassUtils.primitiveToWrapper(field.getType());
+          methodVisitor.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(wrapper));
+          methodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(wrapper),
+                  field.getType().getName() + "Value", "()" + Type.getDescriptor(field.getType()), false);
+        } else if (field.getType() != Object.class) {
+          methodVisitor.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(field.getType()));
+        }
+        methodVisitor.visitFieldInsn(Opcodes.PUTFIELD, owner, field.getName(), Type.getDescriptor(field.getType()));
+        methodVisitor.visitInsn(Opcodes.RETURN);
+      }
+      methodVisitor.visitLabel(unknown);
+      methodVisitor.visitTypeInsn(Opcodes.NEW, Type.getInternalName(IllegalArgumentException.class));
+      methodVisitor.visitInsn(Opcodes.DUP);
+      methodVisitor.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(IllegalArgumentException.class),
+              "<init>", "()V", false);
+      methodVisitor.visitInsn(Opcodes.ATHROW);
+      return new Size(4, method.getStackSize());
+    }
+  }
+}
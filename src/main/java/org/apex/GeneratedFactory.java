@@ -0,0 +1,183 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.apache.commons.lang3.Validate;
+import org.apex.exception.QualifierNotUniqueException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Base class of the factories generated at compile time by the apex factory
+ * processor. The generated {@link #wire(Apex)} creates the beans with plain
+ * constructor calls, writes their injection points directly and registers
+ * them, so no classpath scanning, reflection or service loading happens at
+ * startup. The set of beans is fixed at compile time: beans added later are
+ * registered as they are, without injection.
+ *
+ * @author WangYi
+ * @since 2020/11/14
+ */
+public abstract class GeneratedFactory implements ApexFactory {
+  private final Map<String, Object> beans = new ConcurrentHashMap<>(64);
+  private final TypeIndex typeIndex = new TypeIndex();
+  private final Set<String> primaries = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Initialize the environment and wire the beans
+   *
+   * @param apex apex settings
+   * @throws Exception if the environment cannot be loaded or an inject
+   *                   method fails
+   */
+  public void init(Apex apex) throws Exception {
+    Validate.notNull(apex, "apex must not be null");
+    final Environment environment = apex.environment();
+    environment.mainArgs(apex.mainArgs());
+    environment.init();
+    wire(apex);
+  }
+
+  /**
+   * Create, inject and register the beans known at compile time
+   *
+   * @param apex apex settings
+   * @throws Exception if an inject method fails
+   */
+  protected abstract void wire(Apex apex) throws Exception;
+
+  protected void register(String beanName, Object bean) {
+    beans.put(beanName, bean);
+    typeIndex.add(beanName, bean.getClass());
+  }
+
+  /**
+   * Mark a registered bean as the default candidate of its types
+   *
+   * @param beanName bean name
+   */
+  protected void primary(String beanName) {
+    primaries.add(beanName);
+  }
+
+  /**
+   * Get the bean registered under the name of the class, else the single bean
+   * assignable to it or the primary one among several
+   *
+   * @param cls bean class
+   * @param <T> bean type
+   * @return bean, or null if there is none
+   * @throws QualifierNotUniqueException if several beans are assignable and none is primary
+   */
+  @Override
+  public <T> T getBean(Class<T> cls) {
+    Validate.notNull(cls, "cls must not be null");
+    final Object bean = beans.get(cls.getName());
+    if (bean != null) {
+      return cls.cast(bean);
+    }
+    final List<String> names = typeIndex.names(cls);
+    if (names.size() <= 1) {
+      return names.isEmpty() ? null : cls.cast(beans.get(names.get(0)));
+    }
+    String primary = null;
+    for (String name : names) {
+      if (primaries.contains(name)) {
+        if (primary != null) {
+          throw new QualifierNotUniqueException("Several primary beans of type " + cls.getName()
+                  + ", " + primary + " and " + name);
+        }
+        primary = name;
+      }
+    }
+    if (primary == null) {
+      throw new QualifierNotUniqueException("Qualifier are not unique " + cls.getName() + ", candidates " + names);
+    }
+    return cls.cast(beans.get(primary));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T getBean(String beanName) {
+    Validate.notNull(beanName, "beanName must not be null");
+    return (T) beans.get(beanName);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T getBean(Object obj) {
+    Validate.notNull(obj, "obj must not be null");
+    return (T) getBean(obj.getClass());
+  }
+
+  @Override
+  public <T> T addBean(Class<T> cls) {
+    Validate.notNull(cls, "cls must not be null");
+    return addBean(ReflectionHelper.newInstance(cls));
+  }
+
+  @Override
+  public <T> T addBean(String beanName) {
+    Validate.notNull(beanName, "beanName must not be null");
+    return addBean((Object) ReflectionHelper.newInstance(ReflectionHelper.forName(beanName)));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T addBean(Object obj) {
+    Validate.notNull(obj, "obj must not be null");
+    register(obj.getClass().getName(), obj);
+    return (T) obj;
+  }
+
+  @Override
+  public <T> List<T> getBeanByType(Class<T> cls) {
+    Validate.notNull(cls, "cls must not be null");
+    return typeIndex.beans(cls, beans::get);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> List<T> getBeanByType(Object obj) {
+    Validate.notNull(obj, "obj must not be null");
+    return getBeanByType((Class<T>) obj.getClass());
+  }
+
+  @Override
+  public void removeAll() {
+    beans.clear();
+    typeIndex.clear();
+    primaries.clear();
+  }
+
+  @Override
+  public void removeBean(String beanName) {
+    beans.remove(beanName);
+    typeIndex.remove(beanName);
+    primaries.remove(beanName);
+  }
+}
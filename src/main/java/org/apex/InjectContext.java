@@ -23,7 +23,14 @@
  */
 package org.apex;
 
+import org.apex.annotation.Provider;
+import org.apex.exception.QualifierNotUniqueException;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * @author WangYi
@@ -33,17 +40,28 @@ public class InjectContext {
   private final Object object;
   private final KlassInfo klassInfo;
   private final Map<String, Object> instanceMap;
+  private final AbstractFactory factory;
 
   public InjectContext(KlassInfo klassInfo, Map<String, Object> instanceMap) {
+    this(klassInfo, instanceMap, null);
+  }
+
+  public InjectContext(KlassInfo klassInfo, Map<String, Object> instanceMap, AbstractFactory factory) {
     this.klassInfo = klassInfo;
     this.object = klassInfo.target();
     this.instanceMap = instanceMap;
+    this.factory = factory;
   }
 
   public static InjectContext create(KlassInfo klassInfo, Map<String, Object> instanceMap) {
     return new InjectContext(klassInfo, instanceMap);
   }
 
+  public static InjectContext create(KlassInfo klassInfo, Map<String, Object> instanceMap,
+                                     AbstractFactory factory) {
+    return new InjectContext(klassInfo, instanceMap, factory);
+  }
+
   public Object object() {
     return object;
   }
@@ -55,4 +73,87 @@ public class InjectContext {
   public Map<String, Object> instances() {
     return instanceMap;
   }
+
+  /**
+   * Get a bean by name, creating it first if it is lazy
+   *
+   * @param beanName bean name
+   * @return bean, or null if there is none
+   */
+  public Object bean(String beanName) {
+    return factory != null ? factory.resolveBean(beanName) : instanceMap.get(beanName);
+  }
+
+  /**
+   * Resolve a dependency by qualifier, then by type name, then by assignable
+   * type, creating lazy beans first. Provider, supplier and optional
+   * dependencies are resolved to a wrapper of the bean.
+   *
+   * @param dependency dependency
+   * @return bean, or null if no bean matches
+   */
+  public Object dependency(BeanDefinition.Dependency dependency) {
+    if (factory != null) {
+      return factory.resolveDependency(dependency);
+    }
+    if (dependency.optional()) {
+      return Optional.ofNullable(dependency(dependency.unwrap()));
+    }
+    if (dependency.deferred()) {
+      final BeanDefinition.Dependency target = dependency.unwrap();
+      return dependency.wrapper() == Supplier.class
+              ? (Supplier<Object>) () -> dependency(target)
+              : (Provider<Object>) () -> dependency(target);
+    }
+    Object bean = dependency.qualifier() != null ? instanceMap.get(dependency.qualifier()) : null;
+    if (bean == null) {
+      bean = instanceMap.get(dependency.type().getName());
+    }
+    return bean != null ? bean : candidate(dependency.type(), dependency.qualifier());
+  }
+
+  /**
+   * Resolve the single bean assignable to the type, using the qualifier to
+   * choose among several candidates
+   *
+   * @param type      bean type
+   * @param qualifier qualifier, may be null
+   * @return bean, or null if no bean matches
+   * @throws QualifierNotUniqueException if the qualifier doesn't single out a candidate
+   */
+  public Object candidate(Class<?> type, String qualifier) {
+    if (factory != null) {
+      return factory.resolveCandidate(type, qualifier);
+    }
+    final String beanName = TypeIndex.select(type, beanNamesForType(type), qualifier, name -> null);
+    return beanName != null ? instanceMap.get(beanName) : null;
+  }
+
+  /**
+   * Get the wiring of the class resolved at build time
+   *
+   * @return wiring, or null to resolve the injection points at runtime
+   */
+  public WiringDescriptor.Wiring wiring() {
+    return factory != null ? factory.wiring(klassInfo.clazz()) : null;
+  }
+
+  /**
+   * Get the names of the beans assignable to the type, lazy beans included
+   *
+   * @param type bean type
+   * @return bean names
+   */
+  public List<String> beanNamesForType(Class<?> type) {
+    if (factory != null) {
+      return factory.beanNamesForType(type);
+    }
+    final List<String> names = new ArrayList<>();
+    for (Map.Entry<String, Object> entry : instanceMap.entrySet()) {
+      if (type.isAssignableFrom(entry.getValue().getClass())) {
+        names.add(entry.getKey());
+      }
+    }
+    return names;
+  }
 }
@@ -0,0 +1,492 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.apex.annotation.Inject;
+import org.apex.annotation.Named;
+import org.apex.annotation.PropertyBean;
+import org.apex.annotation.Value;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.ServiceLoader;
+
+/**
+ * The injection points of a class, read from its declared fields once and
+ * cached per class: the {@link Inject} fields with the bean name they are
+ * looked up by, the {@link Value} fields with their property key, and for a
+ * {@link PropertyBean} every field with its property name and the
+ * {@link TypeInjector} converting it, then the {@link Inject} methods of the
+ * class and its superclasses. The fields are made accessible and their
+ * setter and method handles resolved when the plan is built, so injectors
+ * only read, write and invoke. With {@link Apex#bytecodeInjection()} the fields that
+ * allow it are written by a {@link FieldWriter} generated for the class.
+ *
+ * @author WangYi
+ * @since 2020/11/15
+ */
+public final class InjectionPlan {
+  private static final ClassValue<InjectionPlan> PLANS = new ClassValue<InjectionPlan>() {
+    @Override
+    protected InjectionPlan computeValue(Class<?> type) {
+      return new InjectionPlan(type, false);
+    }
+  };
+  private static final ClassValue<InjectionPlan> WRITER_PLANS = new ClassValue<InjectionPlan>() {
+    @Override
+    protected InjectionPlan computeValue(Class<?> type) {
+      return new InjectionPlan(type, true);
+    }
+  };
+  private static final List<TypeInjector> TYPE_INJECTORS = typeInjectors();
+
+  private final Class<?> type;
+  private final List<InjectionPoint> injectPoints = new ArrayList<>();
+  private final List<InjectionPoint> valuePoints = new ArrayList<>();
+  private final List<InjectionPoint> propertyPoints = new ArrayList<>();
+  private final List<InjectionMethod> injectMethods;
+  private final String propertyPrefix;
+
+  private InjectionPlan(Class<?> type, boolean bytecodeInjection) {
+    this.type = type;
+    final PropertyBean propertyBean = type.getAnnotation(PropertyBean.class);
+    this.propertyPrefix = propertyBean != null ? propertyBean.value() : null;
+    for (Field field : type.getDeclaredFields()) {
+      final Inject inject = field.getAnnotation(Inject.class);
+      final Value value = field.getAnnotation(Value.class);
+      if (inject == null && value == null && propertyBean == null) {
+        continue;
+      }
+      field.setAccessible(true);
+      if (inject != null) {
+        String key = field.getType().getName();
+        final Named named = field.getAnnotation(Named.class);
+        if (named != null && !named.value().isEmpty()) {
+          key = named.value();
+        }
+        injectPoints.add(new InjectionPoint(field, key, BeanDefinition.qualifier(field), null));
+      }
+      if (value != null) {
+        final String el = value.value();
+        if (el.length() > 0 && el.startsWith("${") && el.endsWith("}")) {
+          valuePoints.add(new InjectionPoint(field, el.replace("${", "").replace("}", ""), null, null));
+        }
+      }
+      if (propertyBean != null) {
+        TypeInjector converter = null;
+        for (TypeInjector typeInjector : TYPE_INJECTORS) {
+          if (field.getType().equals(typeInjector.getType())) {
+            converter = typeInjector;
+          }
+        }
+        propertyPoints.add(new InjectionPoint(field, propertyPrefix + "." + field.getName(), null, converter));
+      }
+    }
+    this.injectMethods = injectMethods(type);
+    if (bytecodeInjection) {
+      generateWriter();
+    }
+  }
+
+  /**
+   * Collect the {@link Inject} methods of the class and its superclasses,
+   * superclass methods first. A method overridden further down the hierarchy
+   * is only injected if the overriding method is marked with {@link Inject},
+   * and then only once.
+   */
+  private static List<InjectionMethod> injectMethods(Class<?> type) {
+    final List<Class<?>> hierarchy = new ArrayList<>();
+    for (Class<?> cls = type; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+      hierarchy.add(0, cls);
+    }
+    final List<InjectionMethod> injectMethods = new ArrayList<>();
+    for (int i = 0; i < hierarchy.size(); i++) {
+      for (Method method : hierarchy.get(i).getDeclaredMethods()) {
+        if (!method.isAnnotationPresent(Inject.class) || method.isBridge() || method.isSynthetic()
+                || Modifier.isStatic(method.getModifiers()) || Modifier.isAbstract(method.getModifiers())
+                || overridden(method, hierarchy.subList(i + 1, hierarchy.size()))) {
+          continue;
+        }
+        method.setAccessible(true);
+        injectMethods.add(new InjectionMethod(method));
+      }
+    }
+    return Collections.unmodifiableList(injectMethods);
+  }
+
+  private static boolean overridden(Method method, List<Class<?>> subclasses) {
+    final int modifiers = method.getModifiers();
+    if (Modifier.isPrivate(modifiers)) {
+      return false;
+    }
+    final boolean packagePrivate = !Modifier.isPublic(modifiers) && !Modifier.isProtected(modifiers);
+    for (Class<?> subclass : subclasses) {
+      try {
+        final Method override = subclass.getDeclaredMethod(method.getName(), method.getParameterTypes());
+        if (!Modifier.isPrivate(override.getModifiers()) && !Modifier.isStatic(override.getModifiers())
+                && (!packagePrivate || samePackage(subclass, method.getDeclaringClass()))) {
+          return true;
+        }
+      } catch (NoSuchMethodException e) {
+        // not declared by this subclass
+      }
+    }
+    return false;
+  }
+
+  private static boolean samePackage(Class<?> a, Class<?> b) {
+    return a.getClassLoader() == b.getClassLoader()
+            && Objects.equals(a.getPackage(), b.getPackage());
+  }
+
+  /**
+   * Let the points whose field a generated {@link FieldWriter} can write use it
+   */
+  private void generateWriter() {
+    final List<InjectionPoint> points = new ArrayList<>(injectPoints);
+    points.addAll(valuePoints);
+    points.addAll(propertyPoints);
+    final List<Field> fields = new ArrayList<>();
+    for (InjectionPoint point : points) {
+      if (!fields.contains(point.field)) {
+        fields.add(point.field);
+      }
+    }
+    final FieldWriter writer = FieldWriters.generate(type, fields);
+    if (writer == null) {
+      return;
+    }
+    for (InjectionPoint point : points) {
+      if (FieldWriters.writable(point.field)) {
+        point.writer = writer;
+        point.index = fields.indexOf(point.field);
+      }
+    }
+  }
+
+  /**
+   * Get the plan of a class for the current {@link Apex#bytecodeInjection()}
+   * setting, built on first use
+   *
+   * @param type bean class
+   * @return injection plan
+   */
+  public static InjectionPlan of(Class<?> type) {
+    return of(type, Apex.of().bytecodeInjection());
+  }
+
+  /**
+   * Get the plan of a class, built on first use. Plans with and without
+   * generated field writers are cached apart, so changing the setting
+   * never hands out a plan built for the other one.
+   *
+   * @param type              bean class
+   * @param bytecodeInjection write the fields with a generated {@link FieldWriter}
+   * @return injection plan
+   */
+  public static InjectionPlan of(Class<?> type, boolean bytecodeInjection) {
+    return (bytecodeInjection ? WRITER_PLANS : PLANS).get(type);
+  }
+
+  private static List<TypeInjector> typeInjectors() {
+    final List<TypeInjector> typeInjectors = new ArrayList<>();
+    for (TypeInjector typeInjector : ServiceLoader.load(TypeInjector.class)) {
+      typeInjectors.add(typeInjector);
+    }
+    return Collections.unmodifiableList(typeInjectors);
+  }
+
+  public Class<?> type() {
+    return type;
+  }
+
+  /**
+   * Get the {@link Inject} fields, keyed by the bean name they are looked up by
+   *
+   * @return injection points
+   */
+  public List<InjectionPoint> injectPoints() {
+    return Collections.unmodifiableList(injectPoints);
+  }
+
+  /**
+   * Get the {@link Value} fields, keyed by their property key
+   *
+   * @return injection points
+   */
+  public List<InjectionPoint> valuePoints() {
+    return Collections.unmodifiableList(valuePoints);
+  }
+
+  /**
+   * Get the fields of a {@link PropertyBean}, keyed by their property name
+   *
+   * @return injection points, empty if the class is not a property bean
+   */
+  public List<InjectionPoint> propertyPoints() {
+    return Collections.unmodifiableList(propertyPoints);
+  }
+
+  /**
+   * Get the {@link Inject} methods, superclass methods first
+   *
+   * @return inject methods
+   */
+  public List<InjectionMethod> injectMethods() {
+    return injectMethods;
+  }
+
+  /**
+   * Get the {@link PropertyBean} prefix
+   *
+   * @return prefix, or null if the class is not a property bean
+   */
+  public String propertyPrefix() {
+    return propertyPrefix;
+  }
+
+  /**
+   * An accessible field together with what it is resolved by
+   */
+  public static class InjectionPoint {
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Field field;
+    private final MethodHandle setter;
+    private final String key;
+    private final String qualifier;
+    private final TypeInjector typeInjector;
+    private final BeanDefinition.Dependency dependency;
+    private FieldWriter writer;
+    private int index;
+
+    InjectionPoint(Field field, String key, String qualifier, TypeInjector typeInjector) {
+      this.field = field;
+      this.setter = setter(field);
+      this.key = key;
+      this.qualifier = qualifier;
+      this.typeInjector = typeInjector;
+      this.dependency = BeanDefinition.Dependency.of(field.getType(), field.getGenericType(), field);
+    }
+
+    /**
+     * Resolve a setter handle of the accessible field, typed (Object, Object)
+     * so it can be invoked exactly. Final and static fields cannot have one
+     * and are written reflectively.
+     */
+    private static MethodHandle setter(Field field) {
+      if (Modifier.isFinal(field.getModifiers()) || Modifier.isStatic(field.getModifiers())) {
+        return null;
+      }
+      try {
+        return MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+      } catch (IllegalAccessException e) {
+        return null;
+      }
+    }
+
+    FieldWriter writer() {
+      return writer;
+    }
+
+    public Field field() {
+      return field;
+    }
+
+    public String name() {
+      return field.getName();
+    }
+
+    public Class<?> type() {
+      return field.getType();
+    }
+
+    /**
+     * Get the bean name or property key the field is resolved by
+     *
+     * @return key
+     */
+    public String key() {
+      return key;
+    }
+
+    /**
+     * Get the qualifier choosing among several beans matching the type, from
+     * {@link Named} or an annotation marked with {@link org.apex.annotation.Qualifier}
+     *
+     * @return qualifier, or null if the field has none
+     */
+    public String qualifier() {
+      return qualifier;
+    }
+
+    /**
+     * Get the bean the field depends on, unwrapped from a
+     * {@link org.apex.annotation.Provider}, {@link java.util.function.Supplier}
+     * or {@link java.util.Optional} field type
+     *
+     * @return dependency
+     */
+    public BeanDefinition.Dependency dependency() {
+      return dependency;
+    }
+
+    /**
+     * Get the converter of a property field
+     *
+     * @return type injector, or null to read the raw property
+     */
+    public TypeInjector typeInjector() {
+      return typeInjector;
+    }
+
+    /**
+     * Write the field through the generated writer of its class, or through
+     * its setter handle, or reflectively if it has neither
+     *
+     * @param target bean
+     * @param value  field value
+     * @throws IllegalAccessException if the field cannot be written
+     */
+    public void set(Object target, Object value) throws IllegalAccessException {
+      if (writer != null) {
+        try {
+          writer.write(target, index, value);
+        } catch (ClassCastException | NullPointerException e) {
+          throw new IllegalArgumentException("Can not set " + field + " to " + value, e);
+        }
+        return;
+      }
+      if (setter == null) {
+        field.set(target, value);
+        return;
+      }
+      try {
+        setter.invokeExact(target, value);
+      } catch (ClassCastException | NullPointerException e) {
+        throw new IllegalArgumentException("Can not set " + field + " to " + value, e);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return field.getDeclaringClass().getName() + "#" + field.getName() + "(" + key + ")";
+    }
+  }
+
+  /**
+   * An accessible {@link Inject} method together with the dependencies its
+   * parameters are resolved by
+   */
+  public static class InjectionMethod {
+    private final Method method;
+    private final MethodHandle handle;
+    private final List<BeanDefinition.Dependency> dependencies;
+
+    InjectionMethod(Method method) {
+      this.method = method;
+      this.handle = handle(method);
+      final List<BeanDefinition.Dependency> dependencies = new ArrayList<>();
+      for (Parameter parameter : method.getParameters()) {
+        dependencies.add(BeanDefinition.Dependency.of(parameter.getType(), parameter.getParameterizedType(), parameter));
+      }
+      this.dependencies = Collections.unmodifiableList(dependencies);
+    }
+
+    /**
+     * Resolve a handle of the accessible method typed (Object, Object[]) so it
+     * can be invoked exactly, whatever its parameters and return type
+     */
+    private static MethodHandle handle(Method method) {
+      final int parameterCount = method.getParameterCount();
+      try {
+        return MethodHandles.lookup().unreflect(method)
+                .asType(MethodType.genericMethodType(parameterCount + 1))
+                .asSpreader(Object[].class, parameterCount);
+      } catch (IllegalAccessException e) {
+        return null;
+      }
+    }
+
+    public Method method() {
+      return method;
+    }
+
+    /**
+     * Get the dependencies the parameters are resolved by, in parameter order
+     *
+     * @return dependencies
+     */
+    public List<BeanDefinition.Dependency> dependencies() {
+      return dependencies;
+    }
+
+    /**
+     * Invoke the method through its handle, or reflectively if it has none
+     *
+     * @param target bean
+     * @param args   resolved parameters
+     * @throws Exception the exception thrown by the method
+     */
+    public void invoke(Object target, Object... args) throws Exception {
+      if (handle == null) {
+        try {
+          method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+          if (e.getTargetException() instanceof Error) {
+            throw (Error) e.getTargetException();
+          }
+          throw (Exception) e.getTargetException();
+        }
+        return;
+      }
+      try {
+        final Object ignored = (Object) handle.invokeExact(target, args);
+      } catch (Exception | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return method.getDeclaringClass().getName() + "#" + method.getName() + dependencies;
+    }
+  }
+}
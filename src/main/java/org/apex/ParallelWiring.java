@@ -0,0 +1,187 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.apex.exception.BeanInstantiationException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Wires the beans of a {@link DependencyGraph} concurrently. Every component
+ * of the graph holding an eager bean, or a lazy bean an eager one reaches,
+ * becomes a task that starts once the tasks of the components it depends on
+ * have completed, so independent subgraphs are created and injected at the
+ * same time. The beans of a cycle form one component and are wired one after
+ * the other by its task, like in sequential wiring, so a bean is never
+ * created or injected by two tasks.
+ *
+ * @author WangYi
+ * @since 2020/11/17
+ */
+final class ParallelWiring {
+
+  private ParallelWiring() {
+  }
+
+  /**
+   * Wire the beans and wait for all of them
+   *
+   * @param dependencyGraph dependency graph
+   * @param shared          whether a bean is a singleton, created by wiring
+   * @param wirer           creates and injects the beans of a component, by name
+   * @param executor        executor running the tasks
+   * @param parallelism     maximum number of tasks running at once, 0 for the
+   *                        parallelism of the executor
+   */
+  static void wire(DependencyGraph dependencyGraph, Predicate<BeanDefinition> shared, Consumer<List<String>> wirer,
+                   Executor executor, int parallelism) {
+    final Set<String> selected = reachableFromEager(dependencyGraph, shared);
+    final Executor bounded = new BoundedExecutor(executor, parallelism > 0 ? parallelism
+            : executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism()
+            : Runtime.getRuntime().availableProcessors());
+    final Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+    for (List<BeanDefinition> component : dependencyGraph.components()) {
+      // a component is reached as a whole, through any of its beans
+      if (!selected.contains(component.get(0).name())) {
+        continue;
+      }
+      final Set<CompletableFuture<Void>> dependencies = new HashSet<>();
+      final List<String> beanNames = new ArrayList<>(component.size());
+      for (BeanDefinition beanDefinition : component) {
+        for (String dependency : dependencyGraph.dependencies(beanDefinition.name())) {
+          // absent for the beans of the component itself
+          final CompletableFuture<Void> future = futures.get(dependency);
+          if (future != null) {
+            dependencies.add(future);
+          }
+        }
+        // prototype and scoped beans are created when looked up, only their dependencies are wired here
+        if (shared.test(beanDefinition)) {
+          beanNames.add(beanDefinition.name());
+        }
+      }
+      final CompletableFuture<Void> ready = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]));
+      final CompletableFuture<Void> wired = beanNames.isEmpty() ? ready
+              : ready.thenRunAsync(() -> wirer.accept(beanNames), bounded);
+      for (BeanDefinition beanDefinition : component) {
+        futures.put(beanDefinition.name(), wired);
+      }
+    }
+    try {
+      CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new BeanInstantiationException(e.getCause());
+    }
+  }
+
+  /**
+   * Select the eager beans and the lazy beans they depend on, directly or
+   * not, as all of them are created during wiring
+   */
+  private static Set<String> reachableFromEager(DependencyGraph dependencyGraph, Predicate<BeanDefinition> shared) {
+    final Deque<String> pending = new ArrayDeque<>();
+    for (BeanDefinition beanDefinition : dependencyGraph.order()) {
+      if (!beanDefinition.lazy() && shared.test(beanDefinition)) {
+        pending.push(beanDefinition.name());
+      }
+    }
+    final Set<String> selected = new HashSet<>();
+    while (!pending.isEmpty()) {
+      final String beanName = pending.pop();
+      if (selected.add(beanName)) {
+        pending.addAll(dependencyGraph.dependencies(beanName));
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Runs at most a given number of tasks at once on the delegate executor,
+   * queueing the others
+   */
+  private static class BoundedExecutor implements Executor {
+    private final Executor delegate;
+    private final int parallelism;
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger running = new AtomicInteger();
+
+    BoundedExecutor(Executor delegate, int parallelism) {
+      this.delegate = delegate;
+      this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      queue.add(task);
+      drain();
+    }
+
+    private void drain() {
+      while (!queue.isEmpty()) {
+        final int current = running.get();
+        if (current >= parallelism) {
+          return;
+        }
+        if (!running.compareAndSet(current, current + 1)) {
+          continue;
+        }
+        final Runnable task = queue.poll();
+        if (task == null) {
+          running.decrementAndGet();
+          continue;
+        }
+        delegate.execute(() -> {
+          try {
+            task.run();
+          } finally {
+            running.decrementAndGet();
+            drain();
+          }
+        });
+      }
+    }
+  }
+}
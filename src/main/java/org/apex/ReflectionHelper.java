@@ -58,6 +58,66 @@ public class ReflectionHelper {
     }
   }
 
+  /**
+   * Create an instance through the given constructor, which may be non-public
+   *
+   * @param constructor constructor
+   * @param args        constructor arguments
+   * @param <T>         instance type
+   * @return new instance
+   */
+  public static <T> T newInstance(Constructor<T> constructor, Object... args) {
+    final Class<T> targetClass = constructor.getDeclaringClass();
+    try {
+      constructor.setAccessible(true);
+      return constructor.newInstance(args);
+    } catch (InstantiationException e) {
+      throw new BeanInstantiationException(targetClass + "is  an abstract class", e);
+    } catch (IllegalAccessException e) {
+      throw new BeanInstantiationException("Illegal Access '" + constructor + "'", e);
+    } catch (IllegalArgumentException e) {
+      throw new BeanInstantiationException("Illegal arguments for '" + constructor + "'", e);
+    } catch (InvocationTargetException e) {
+      throw new BeanInstantiationException("Exception occurred when invoking '"
+              + constructor + "'", e.getTargetException());
+    }
+  }
+
+  /**
+   * Get the thread context class loader, or the class loader of apex
+   *
+   * @return class loader
+   */
+  public static ClassLoader defaultClassLoader() {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    return classLoader != null ? classLoader : ReflectionHelper.class.getClassLoader();
+  }
+
+  /**
+   * Load a class by name with the default class loader
+   *
+   * @param className class name
+   * @return loaded class
+   */
+  public static Class<?> forName(String className) {
+    return forName(className, defaultClassLoader());
+  }
+
+  /**
+   * Load a class by name
+   *
+   * @param className   class name
+   * @param classLoader class loader
+   * @return loaded class
+   */
+  public static Class<?> forName(String className, ClassLoader classLoader) {
+    try {
+      return Class.forName(className, false, classLoader);
+    } catch (ClassNotFoundException e) {
+      throw new BeanInstantiationException("Class '" + className + "' could not be loaded", e);
+    }
+  }
+
   public static <T> boolean isInterface(Class<T> clazz) {
     return clazz.isInterface();
   }
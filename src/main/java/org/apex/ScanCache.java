@@ -0,0 +1,299 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of the classpath scan. The cache is keyed by a fingerprint of
+ * every classpath entry (path, size and modification time of jars and class
+ * files) plus the configured packages, type annotations, impl interfaces and
+ * type filters, so any change to them invalidates it. The classpath entries
+ * are read from the class loaders rather than resolved by a scanner, so a hit
+ * costs no classpath scan at all.
+ *
+ * @author WangYi
+ * @since 2020/11/5
+ */
+public class ScanCache {
+  private static final Logger log = LoggerFactory.getLogger(ScanCache.class);
+
+  static final String CACHE_FILE = "apex-scan.cache";
+  private static final String KEY_FINGERPRINT = "fingerprint";
+  private static final String KEY_TYPE_FILTERS = "typeFilters";
+  private static final String KEY_BEANS = "beans";
+
+  private final Path file;
+  private final String fingerprint;
+
+  private ScanCache(Path file, String fingerprint) {
+    this.file = file;
+    this.fingerprint = fingerprint;
+  }
+
+  /**
+   * Create a scan cache for the classpath entries and the apex configuration
+   *
+   * @param apex            apex, whose type filters are those configured
+   *                        by the user, not the ones discovery finds
+   * @param classpathFiles  classpath entries
+   * @return scan cache
+   */
+  public static ScanCache create(Apex apex, List<File> classpathFiles) {
+    final MessageDigest digest = sha256();
+    update(digest, "packages", apex.packages());
+    update(digest, "rejectPackages", apex.rejectPackages());
+    update(digest, "rejectJars", apex.rejectJars());
+    final List<String> names = new ArrayList<>();
+    for (Class<? extends Annotation> annotation : apex.typeAnnotations()) {
+      names.add(annotation.getName());
+    }
+    update(digest, "typeAnnotations", names);
+    names.clear();
+    for (Class<?> implInterface : apex.implInterfaces()) {
+      names.add(implInterface.getName());
+    }
+    update(digest, "implInterfaces", names);
+    names.clear();
+    for (TypeFilter typeFilter : apex.typeFilters()) {
+      names.add(typeFilter.getClass().getName());
+    }
+    update(digest, "typeFilters", names);
+    for (File classpathFile : classpathFiles) {
+      fingerprint(digest, classpathFile, apex.packages());
+    }
+    final StringBuilder sb = new StringBuilder();
+    for (byte b : digest.digest()) {
+      sb.append(String.format("%02x", b));
+    }
+    return new ScanCache(apex.scanCache().resolve(CACHE_FILE), sb.toString());
+  }
+
+  /**
+   * Get the classpath entries the fingerprint covers: the entries of the
+   * class path, and those of the url class loaders up from the given one. A
+   * class path made of a single jar, such as a launcher jar, also covers the
+   * entries of its manifest. Unlike a scanner no other jar is opened.
+   *
+   * @param classLoader class loader the beans are loaded with
+   * @return classpath entries
+   */
+  public static List<File> classpathFiles(ClassLoader classLoader) {
+    final Set<File> files = new LinkedHashSet<>();
+    for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+      if (loader instanceof URLClassLoader) {
+        for (URL url : ((URLClassLoader) loader).getURLs()) {
+          addFile(files, url);
+        }
+      }
+    }
+    final List<File> classPath = new ArrayList<>();
+    for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        classPath.add(new File(entry));
+      }
+    }
+    files.addAll(classPath);
+    if (classPath.size() == 1 && classPath.get(0).isFile()) {
+      addManifestClassPath(files, classPath.get(0));
+    }
+    return new ArrayList<>(files);
+  }
+
+  private static void addManifestClassPath(Set<File> files, File jar) {
+    try (JarFile jarFile = new JarFile(jar)) {
+      final Manifest manifest = jarFile.getManifest();
+      final String classPath = manifest != null
+              ? manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) : null;
+      if (classPath == null) {
+        return;
+      }
+      final URL base = jar.toURI().toURL();
+      for (String entry : classPath.trim().split("\\s+")) {
+        if (!entry.isEmpty()) {
+          addFile(files, new URL(base, entry));
+        }
+      }
+    } catch (IOException e) {
+      log.debug("Unable to read the manifest of {}", jar, e);
+    }
+  }
+
+  private static void addFile(Set<File> files, URL url) {
+    if (!"file".equals(url.getProtocol())) {
+      return;
+    }
+    try {
+      files.add(new File(url.toURI()));
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      files.add(new File(url.getPath()));
+    }
+  }
+
+  /**
+   * Read the cached type filters and beans if the fingerprint still matches
+   *
+   * @return cached type filter and bean class names, or null on a miss
+   */
+  public Entry read() {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    final Properties properties = new Properties();
+    try (InputStream inputStream = Files.newInputStream(file)) {
+      properties.load(inputStream);
+    } catch (IOException e) {
+      log.warn("Unable to read scan cache {}", file, e);
+      return null;
+    }
+    if (!fingerprint.equals(properties.getProperty(KEY_FINGERPRINT))) {
+      log.debug("Scan cache {} is stale", file);
+      return null;
+    }
+    return new Entry(split(properties.getProperty(KEY_TYPE_FILTERS)),
+            split(properties.getProperty(KEY_BEANS)));
+  }
+
+  /**
+   * Store the result of a scan
+   *
+   * @param typeFilters type filter class names found on the classpath
+   * @param beans       bean class names accepted by the type filters
+   */
+  public void write(Collection<String> typeFilters, Collection<String> beans) {
+    final Properties properties = new Properties();
+    properties.setProperty(KEY_FINGERPRINT, fingerprint);
+    properties.setProperty(KEY_TYPE_FILTERS, String.join(",", typeFilters));
+    properties.setProperty(KEY_BEANS, String.join(",", beans));
+    try {
+      Files.createDirectories(file.getParent());
+      final Path tmp = Files.createTempFile(file.getParent(), CACHE_FILE, ".tmp");
+      try (OutputStream outputStream = Files.newOutputStream(tmp)) {
+        properties.store(outputStream, null);
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.warn("Unable to write scan cache {}", file, e);
+    }
+  }
+
+  private static void fingerprint(MessageDigest digest, File classpathFile, Collection<String> packages) {
+    update(digest, classpathFile.getAbsolutePath() + ":" + classpathFile.length()
+            + ":" + classpathFile.lastModified());
+    if (!classpathFile.isDirectory()) {
+      return;
+    }
+    final Collection<String> roots = packages.isEmpty() ? Collections.singleton("") : packages;
+    for (String pkg : roots) {
+      final Path root = classpathFile.toPath().resolve(pkg.replace('.', File.separatorChar));
+      if (!Files.isDirectory(root)) {
+        continue;
+      }
+      final TreeSet<String> entries = new TreeSet<>();
+      try (Stream<Path> paths = Files.walk(root)) {
+        paths.filter(Files::isRegularFile).forEach(path -> {
+          final File file = path.toFile();
+          entries.add(path + ":" + file.length() + ":" + file.lastModified());
+        });
+      } catch (IOException e) {
+        entries.add(root + ":unreadable:" + System.nanoTime());
+      }
+      update(digest, "dir:" + root, entries);
+    }
+  }
+
+  private static void update(MessageDigest digest, String key, Collection<String> values) {
+    update(digest, key + "=" + String.join(",", new TreeSet<>(values)));
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) '\n');
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static List<String> split(String value) {
+    if (value == null || value.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return Arrays.asList(value.split(","));
+  }
+
+  /**
+   * Cached scan result
+   */
+  public static class Entry {
+    private final List<String> typeFilters;
+    private final List<String> beans;
+
+    Entry(List<String> typeFilters, List<String> beans) {
+      this.typeFilters = typeFilters;
+      this.beans = beans;
+    }
+
+    public List<String> typeFilters() {
+      return typeFilters;
+    }
+
+    public List<String> beans() {
+      return beans;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import java.util.function.Supplier;
+
+/**
+ * A bean handed to a {@link BeanScope}, created once per factory and bean
+ * definition. Its index is unique among the scoped bean names of the factory
+ * and small, so scopes can keep their instances in an array. A bean that is
+ * redefined keeps its index, so its new handle takes the slot of the old one.
+ *
+ * @author WangYi
+ * @since 2020/11/23
+ */
+public final class ScopedBean {
+  private final BeanDefinition beanDefinition;
+  private final int index;
+  private final BeanScope scope;
+  private final Supplier<Object> factory;
+  private volatile boolean retired;
+
+  ScopedBean(BeanDefinition beanDefinition, int index, BeanScope scope, Supplier<Object> factory) {
+    this.beanDefinition = beanDefinition;
+    this.index = index;
+    this.scope = scope;
+    this.factory = factory;
+  }
+
+  public String name() {
+    return beanDefinition.name();
+  }
+
+  public BeanDefinition beanDefinition() {
+    return beanDefinition;
+  }
+
+  /**
+   * Get the index of the bean among the scoped beans of its factory
+   *
+   * @return index, from 0
+   */
+  public int index() {
+    return index;
+  }
+
+  BeanScope scope() {
+    return scope;
+  }
+
+  /**
+   * Whether the definition or the scope of the bean changed since this
+   * handle was created. A retired handle is no longer looked up.
+   */
+  boolean retired() {
+    return retired;
+  }
+
+  void retire() {
+    retired = true;
+  }
+
+  /**
+   * Create and inject a new instance of the bean
+   *
+   * @return new bean
+   */
+  public Object create() {
+    return factory.get();
+  }
+
+  @Override
+  public String toString() {
+    return "ScopedBean(" + beanDefinition.name() + ", " + index + ")";
+  }
+}
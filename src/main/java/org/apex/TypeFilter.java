@@ -23,6 +23,8 @@
  */
 package org.apex;
 
+import java.util.Collection;
+
 /**
  * @author WangYi
  * @since 2020/8/8
@@ -30,4 +32,30 @@ package org.apex;
 @FunctionalInterface
 public interface TypeFilter {
   boolean filter(Class<?> cls);
+
+  /**
+   * Compose type filters into one that accepts a class if any filter accepts
+   * it, stopping at the first filter that does. Without filters every class
+   * is accepted.
+   *
+   * @param typeFilters type filters
+   * @return composite type filter
+   */
+  static TypeFilter any(Collection<? extends TypeFilter> typeFilters) {
+    final TypeFilter[] filters = typeFilters.toArray(new TypeFilter[0]);
+    if (filters.length == 0) {
+      return cls -> true;
+    }
+    if (filters.length == 1) {
+      return filters[0];
+    }
+    return cls -> {
+      for (TypeFilter filter : filters) {
+        if (filter.filter(cls)) {
+          return true;
+        }
+      }
+      return false;
+    };
+  }
 }
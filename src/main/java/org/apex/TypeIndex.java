@@ -0,0 +1,259 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.apex.exception.QualifierNotUniqueException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Maps every superclass and interface of the registered beans to the names
+ * of the beans assignable to it, so finding the candidates of a type is a
+ * map lookup instead of an assignability check against every bean. Changes
+ * are applied to per-type sets under a lock, in constant time per supertype;
+ * lookups are lock free and return unmodifiable snapshots of a set, taken on
+ * the first lookup after it changed, so registering many beans in a row
+ * doesn't copy the lists of their common supertypes each time. The beans of
+ * a type are cached the same way until a bean assignable to the type changes.
+ *
+ * @author WangYi
+ * @since 2020/11/18
+ */
+final class TypeIndex {
+  private final Map<Class<?>, Set<String>> namesByType = new HashMap<>(128);
+  private final Map<Class<?>, List<String>> snapshots = new ConcurrentHashMap<>(128);
+  private final Map<String, Class<?>> types = new HashMap<>(64);
+  private final Map<Class<?>, List<?>> beansByType = new ConcurrentHashMap<>(64);
+
+  /**
+   * Index a bean under its class and all of its supertypes, replacing the
+   * class it was indexed with before
+   *
+   * @param beanName bean name
+   * @param type     bean class
+   * @return true if the bean was not indexed under the class before
+   */
+  boolean add(String beanName, Class<?> type) {
+    final Set<Class<?>> changed;
+    final boolean added;
+    synchronized (this) {
+      final Class<?> previous = types.put(beanName, type);
+      added = previous != type;
+      changed = supertypes(type);
+      if (previous != null && added) {
+        for (Class<?> supertype : supertypes(previous)) {
+          update(supertype, beanName, false);
+        }
+        changed.addAll(supertypes(previous));
+      }
+      if (added) {
+        for (Class<?> supertype : supertypes(type)) {
+          update(supertype, beanName, true);
+        }
+      }
+    }
+    // same class or not, the bean may have been created since
+    evict(changed);
+    return added;
+  }
+
+  /**
+   * Remove a bean from the index
+   *
+   * @param beanName bean name
+   */
+  void remove(String beanName) {
+    final Class<?> previous;
+    synchronized (this) {
+      previous = types.remove(beanName);
+      if (previous == null) {
+        return;
+      }
+      for (Class<?> supertype : supertypes(previous)) {
+        update(supertype, beanName, false);
+      }
+    }
+    evict(supertypes(previous));
+  }
+
+  void clear() {
+    synchronized (this) {
+      namesByType.clear();
+      snapshots.clear();
+      types.clear();
+    }
+    beansByType.clear();
+  }
+
+  /**
+   * Select the candidate of an injection point among the beans assignable to
+   * its type. A qualifier keeps the beans named after or qualified by it
+   * only. The candidate is then the only bean left, else the single
+   * {@link org.apex.annotation.Primary} one among them.
+   *
+   * @param type        injection point type
+   * @param names       names of the beans assignable to the type
+   * @param qualifier   qualifier, may be null
+   * @param definitions bean definition by name, null for an instance without one
+   * @return bean name, or null if no bean is assignable to the type and qualifier
+   * @throws QualifierNotUniqueException if no single candidate stands out
+   */
+  static String select(Class<?> type, List<String> names, String qualifier,
+                       Function<String, BeanDefinition> definitions) {
+    List<String> selected = names;
+    if (qualifier != null) {
+      selected = new ArrayList<>(names.size());
+      for (String name : names) {
+        final BeanDefinition beanDefinition = definitions.apply(name);
+        if (name.equals(qualifier) || (beanDefinition != null && beanDefinition.qualifiers().contains(qualifier))) {
+          selected.add(name);
+        }
+      }
+    }
+    if (selected.size() <= 1) {
+      return selected.isEmpty() ? null : selected.get(0);
+    }
+    String primary = null;
+    for (String name : selected) {
+      final BeanDefinition beanDefinition = definitions.apply(name);
+      if (beanDefinition != null && beanDefinition.primary()) {
+        if (primary != null) {
+          throw new QualifierNotUniqueException("Several primary beans of type " + type.getName()
+                  + ", " + primary + " and " + name);
+        }
+        primary = name;
+      }
+    }
+    if (primary == null) {
+      throw new QualifierNotUniqueException("Qualifier are not unique " + type.getName()
+              + (qualifier != null ? "(" + qualifier + ")" : "") + ", candidates " + selected);
+    }
+    return primary;
+  }
+
+  /**
+   * Get the names of the beans assignable to the type, in registration order
+   *
+   * @param type bean type
+   * @return unmodifiable bean names
+   */
+  List<String> names(Class<?> type) {
+    final List<String> snapshot = snapshots.get(type);
+    if (snapshot != null) {
+      return snapshot;
+    }
+    synchronized (this) {
+      final Set<String> names = namesByType.get(type);
+      if (names == null) {
+        return Collections.emptyList();
+      }
+      return snapshots.computeIfAbsent(type, key -> Collections.unmodifiableList(new ArrayList<>(names)));
+    }
+  }
+
+  /**
+   * Whether the beans of the type are cached
+   *
+   * @param type bean type
+   * @return true if {@link #beans(Class, Function)} returns without building the list
+   */
+  boolean cached(Class<?> type) {
+    return beansByType.containsKey(type);
+  }
+
+  @SuppressWarnings("unchecked")
+  <T> List<T> beans(Class<T> type, Function<String, Object> lookup) {
+    // invalidation removes the entry after changing the index, and waits for
+    // a computation of the same entry, so a stale list is never left behind
+    return (List<T>) beansByType.computeIfAbsent(type, key -> {
+      final List<String> names = names(key);
+      final List<Object> beans = new ArrayList<>(names.size());
+      for (String name : names) {
+        final Object bean = lookup.apply(name);
+        if (key.isInstance(bean)) {
+          beans.add(bean);
+        }
+      }
+      return Collections.unmodifiableList(beans);
+    });
+  }
+
+  /**
+   * Add a bean to or remove it from the set of a type, dropping the snapshot
+   * of the set. Called with the lock held.
+   */
+  private void update(Class<?> type, String beanName, boolean add) {
+    final Set<String> names = namesByType.computeIfAbsent(type, key -> new LinkedHashSet<>());
+    final boolean changed = add ? names.add(beanName) : names.remove(beanName);
+    if (!changed) {
+      return;
+    }
+    snapshots.remove(type);
+    if (names.isEmpty()) {
+      namesByType.remove(type);
+    }
+  }
+
+  /**
+   * Drop the cached beans of the types, once the index has changed and
+   * without the lock held: the removal waits for a computation of the same
+   * entry, which may itself be waiting for the lock to take a snapshot
+   */
+  private void evict(Set<Class<?>> changed) {
+    for (Class<?> type : changed) {
+      beansByType.remove(type);
+    }
+  }
+
+  /**
+   * Get the class, its superclasses and all the interfaces they implement
+   */
+  static Set<Class<?>> supertypes(Class<?> type) {
+    final Set<Class<?>> supertypes = new LinkedHashSet<>();
+    for (Class<?> cls = type; cls != null; cls = cls.getSuperclass()) {
+      supertypes.add(cls);
+      addInterfaces(cls, supertypes);
+    }
+    if (type.isInterface()) {
+      supertypes.add(Object.class);
+    }
+    return supertypes;
+  }
+
+  private static void addInterfaces(Class<?> type, Set<Class<?>> supertypes) {
+    for (Class<?> anInterface : type.getInterfaces()) {
+      if (supertypes.add(anInterface)) {
+        addInterfaces(anInterface, supertypes);
+      }
+    }
+  }
+}
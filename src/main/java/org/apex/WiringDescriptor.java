@@ -0,0 +1,529 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.Validate;
+import org.apex.annotation.ConditionalOnClass;
+import org.apex.annotation.ConditionalOnMissingBean;
+import org.apex.annotation.ConditionalOnProperty;
+import org.apex.annotation.Inject;
+import org.apex.annotation.PropertyBean;
+import org.apex.exception.QualifierNotUniqueException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The wiring model of an application resolved at build time: the bean
+ * definitions, including those of {@link org.apex.annotation.Bean} methods,
+ * the bean each {@link Inject} field is wired to and the {@link PropertyBean}
+ * prefixes. It is written in a compact binary form to {@link #LOCATION} by the
+ * apex maven plugin, and {@link ApexContext} takes its definitions from it
+ * instead of discovering them, provided it was built with the same discovery
+ * settings: packages, reject lists, type annotations, impl interfaces, type
+ * filters and the lazy default all change which beans are defined.
+ * <p>
+ * Injection points that cannot be resolved, or that match several beans
+ * without a qualifier, are collected as {@link #problems()}. Beans carrying a
+ * conditional annotation are only known at startup, so they are never wired
+ * ahead of time and never make an injection point ambiguous.
+ *
+ * @author WangYi
+ * @since 2020/11/13
+ */
+public class WiringDescriptor {
+  public static final String LOCATION = "META-INF/apex.wiring";
+
+  private static final Logger log = LoggerFactory.getLogger(WiringDescriptor.class);
+  private static final int MAGIC = 0x41504558;
+  private static final int VERSION = 3;
+  private static final int LAZY = 1;
+  private static final int FACTORY = 2;
+
+  private final Set<String> packages;
+  private final List<String> options;
+  private final Map<String, BeanDefinition> beanDefinitions;
+  private final Map<String, Wiring> wirings;
+  private final TypeIndex typeIndex = new TypeIndex();
+  private final List<String> problems = new ArrayList<>();
+
+  private WiringDescriptor(Set<String> packages, List<String> options,
+                           Map<String, BeanDefinition> beanDefinitions, Map<String, Wiring> wirings) {
+    this.packages = Collections.unmodifiableSet(packages);
+    this.options = Collections.unmodifiableList(options);
+    this.beanDefinitions = beanDefinitions;
+    this.wirings = wirings;
+  }
+
+  /**
+   * Discover the beans of the application and resolve their wiring
+   *
+   * @param apex apex settings
+   * @return wiring descriptor
+   */
+  public static WiringDescriptor create(Apex apex) {
+    Validate.notNull(apex, "apex must not be null");
+    final List<String> options = options(apex);
+    final List<BeanDefinition> beanDefinitions = new ArrayList<>();
+    for (BeanDefinition beanDefinition : Discoverer.discover(apex)) {
+      beanDefinitions.add(beanDefinition);
+      beanDefinitions.addAll(BeanDefinition.configBeanDefinitions(beanDefinition, apex.lazy()));
+    }
+    return create(apex.packages(), options, beanDefinitions);
+  }
+
+  /**
+   * Resolve the wiring of the given bean definitions. The descriptor only
+   * records the packages, so it only accepts settings that have nothing
+   * else to configure discovery with.
+   *
+   * @param packages        packages the beans were discovered in
+   * @param beanDefinitions bean definitions, later ones replace earlier ones of the same name
+   * @return wiring descriptor
+   */
+  public static WiringDescriptor create(Collection<String> packages, Collection<BeanDefinition> beanDefinitions) {
+    Validate.notNull(packages, "packages must not be null");
+    return create(packages, options(packages, Collections.emptySet(), Collections.emptySet(),
+            Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), false), beanDefinitions);
+  }
+
+  private static WiringDescriptor create(Collection<String> packages, List<String> options,
+                                         Collection<BeanDefinition> beanDefinitions) {
+    Validate.notNull(beanDefinitions, "beanDefinitions must not be null");
+    final Map<String, BeanDefinition> definitions = new LinkedHashMap<>();
+    for (BeanDefinition beanDefinition : beanDefinitions) {
+      definitions.put(beanDefinition.name(), beanDefinition);
+    }
+    final WiringDescriptor descriptor = new WiringDescriptor(new TreeSet<>(packages), options, definitions,
+            new LinkedHashMap<>());
+    for (BeanDefinition beanDefinition : definitions.values()) {
+      descriptor.typeIndex.add(beanDefinition.name(), beanDefinition.beanClass());
+    }
+    for (BeanDefinition beanDefinition : definitions.values()) {
+      descriptor.resolve(beanDefinition);
+    }
+    return descriptor;
+  }
+
+  /**
+   * Load the descriptor from the classpath
+   *
+   * @param classLoader class loader to read the descriptor and load the bean classes with
+   * @return wiring descriptor, or null if there is none or it no longer matches the classes
+   */
+  public static WiringDescriptor load(ClassLoader classLoader) {
+    Validate.notNull(classLoader, "classLoader must not be null");
+    try (InputStream inputStream = classLoader.getResourceAsStream(LOCATION)) {
+      if (inputStream == null) {
+        return null;
+      }
+      return read(inputStream, classLoader);
+    } catch (IOException e) {
+      log.warn("Ignoring wiring descriptor {}: {}", LOCATION, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Read a descriptor written by {@link #write(OutputStream)}
+   *
+   * @param inputStream descriptor input
+   * @param classLoader class loader to load the bean classes with
+   * @return wiring descriptor
+   * @throws IOException if the input is not a wiring descriptor or a class is missing
+   */
+  public static WiringDescriptor read(InputStream inputStream, ClassLoader classLoader) throws IOException {
+    final DataInputStream in = new DataInputStream(inputStream);
+    if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+      throw new IOException("Not a wiring descriptor of version " + VERSION);
+    }
+    final Set<String> packages = new TreeSet<>(readStrings(in));
+    final List<String> options = readStrings(in);
+    final Map<String, BeanDefinition> beanDefinitions = new LinkedHashMap<>();
+    for (int i = in.readInt(); i > 0; i--) {
+      final String name = in.readUTF();
+      final Class<?> beanClass = loadClass(in.readUTF(), classLoader);
+      final Class<? extends Annotation> scope = loadClass(in.readUTF(), classLoader).asSubclass(Annotation.class);
+      final int flags = in.readUnsignedByte();
+      final Set<String> qualifiers = new LinkedHashSet<>(readStrings(in));
+      String factoryBean = null;
+      Method factoryMethod = null;
+      if ((flags & FACTORY) != 0) {
+        factoryBean = in.readUTF();
+        final Class<?> declaringClass = loadClass(in.readUTF(), classLoader);
+        final String methodName = in.readUTF();
+        final List<String> parameterNames = readStrings(in);
+        final Class<?>[] parameterTypes = new Class<?>[parameterNames.size()];
+        for (int p = 0; p < parameterTypes.length; p++) {
+          parameterTypes[p] = loadClass(parameterNames.get(p), classLoader);
+        }
+        try {
+          factoryMethod = declaringClass.getDeclaredMethod(methodName, parameterTypes);
+        } catch (NoSuchMethodException e) {
+          throw new IOException("Missing bean method " + declaringClass.getName() + "#" + methodName, e);
+        }
+      }
+      beanDefinitions.put(name, BeanDefinition.create(name, beanClass, scope, qualifiers,
+              factoryBean, factoryMethod, (flags & LAZY) != 0));
+    }
+    final Map<String, Wiring> wirings = new LinkedHashMap<>();
+    for (int i = in.readInt(); i > 0; i--) {
+      final String className = in.readUTF();
+      final String prefix = in.readBoolean() ? in.readUTF() : null;
+      final Map<String, String> fields = new LinkedHashMap<>();
+      for (int f = in.readUnsignedShort(); f > 0; f--) {
+        fields.put(in.readUTF(), in.readUTF());
+      }
+      wirings.put(className, new Wiring(prefix, fields));
+    }
+    return new WiringDescriptor(packages, options, beanDefinitions, wirings);
+  }
+
+  /**
+   * Write the descriptor in its binary form
+   *
+   * @param outputStream descriptor output
+   * @throws IOException if writing fails
+   */
+  public void write(OutputStream outputStream) throws IOException {
+    final DataOutputStream out = new DataOutputStream(outputStream);
+    out.writeInt(MAGIC);
+    out.writeShort(VERSION);
+    writeStrings(out, packages);
+    writeStrings(out, options);
+    out.writeInt(beanDefinitions.size());
+    for (BeanDefinition beanDefinition : beanDefinitions.values()) {
+      final Method factoryMethod = beanDefinition.factoryMethod();
+      out.writeUTF(beanDefinition.name());
+      out.writeUTF(beanDefinition.beanClass().getName());
+      out.writeUTF(beanDefinition.scope().getName());
+      out.writeByte((beanDefinition.lazy() ? LAZY : 0) | (factoryMethod != null ? FACTORY : 0));
+      writeStrings(out, beanDefinition.qualifiers());
+      if (factoryMethod != null) {
+        out.writeUTF(beanDefinition.factoryBean());
+        out.writeUTF(factoryMethod.getDeclaringClass().getName());
+        out.writeUTF(factoryMethod.getName());
+        final List<String> parameterNames = new ArrayList<>();
+        for (Class<?> parameterType : factoryMethod.getParameterTypes()) {
+          parameterNames.add(parameterType.getName());
+        }
+        writeStrings(out, parameterNames);
+      }
+    }
+    out.writeInt(wirings.size());
+    for (Map.Entry<String, Wiring> entry : wirings.entrySet()) {
+      final Wiring wiring = entry.getValue();
+      out.writeUTF(entry.getKey());
+      out.writeBoolean(wiring.propertyPrefix() != null);
+      if (wiring.propertyPrefix() != null) {
+        out.writeUTF(wiring.propertyPrefix());
+      }
+      out.writeShort(wiring.fields().size());
+      for (Map.Entry<String, String> field : wiring.fields().entrySet()) {
+        out.writeUTF(field.getKey());
+        out.writeUTF(field.getValue());
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Whether the descriptor was built with the discovery settings of the
+   * given ones, so that discovery would define the same beans
+   *
+   * @param apex apex settings
+   * @return true if the descriptor can replace discovery
+   */
+  public boolean accepts(Apex apex) {
+    return options.equals(options(apex));
+  }
+
+  public Set<String> packages() {
+    return packages;
+  }
+
+  /**
+   * Get the discovery settings the descriptor was built with
+   *
+   * @return settings, one {@code name=values} line each
+   */
+  public List<String> options() {
+    return options;
+  }
+
+  /**
+   * Get the settings that change which beans discovery defines, in a stable
+   * form. Type filters are told apart by class, those found on the
+   * classpath are not part of the settings.
+   *
+   * @param apex apex settings
+   * @return settings, one {@code name=values} line each
+   */
+  static List<String> options(Apex apex) {
+    final Set<String> typeAnnotations = new TreeSet<>();
+    for (Class<? extends Annotation> typeAnnotation : apex.typeAnnotations()) {
+      typeAnnotations.add(typeAnnotation.getName());
+    }
+    final Set<String> implInterfaces = new TreeSet<>();
+    for (Class<?> implInterface : apex.implInterfaces()) {
+      implInterfaces.add(implInterface.getName());
+    }
+    final Set<String> typeFilters = new TreeSet<>();
+    for (TypeFilter typeFilter : apex.typeFilters()) {
+      typeFilters.add(typeFilter.getClass().getName());
+    }
+    return options(apex.packages(), apex.rejectPackages(), apex.rejectJars(), typeAnnotations,
+            implInterfaces, typeFilters, apex.lazy());
+  }
+
+  private static List<String> options(Collection<String> packages, Collection<String> rejectPackages,
+                                      Collection<String> rejectJars, Collection<String> typeAnnotations,
+                                      Collection<String> implInterfaces, Collection<String> typeFilters,
+                                      boolean lazy) {
+    final List<String> options = new ArrayList<>();
+    options.add("packages=" + String.join(",", new TreeSet<>(packages)));
+    options.add("rejectPackages=" + String.join(",", new TreeSet<>(rejectPackages)));
+    options.add("rejectJars=" + String.join(",", new TreeSet<>(rejectJars)));
+    options.add("typeAnnotations=" + String.join(",", new TreeSet<>(typeAnnotations)));
+    options.add("implInterfaces=" + String.join(",", new TreeSet<>(implInterfaces)));
+    options.add("typeFilters=" + String.join(",", new TreeSet<>(typeFilters)));
+    options.add("lazy=" + lazy);
+    return options;
+  }
+
+  public Collection<BeanDefinition> beanDefinitions() {
+    return Collections.unmodifiableCollection(beanDefinitions.values());
+  }
+
+  /**
+   * Get the wiring resolved for a class
+   *
+   * @param cls bean class
+   * @return wiring, or null if the class has no injection points or property prefix
+   */
+  public Wiring wiring(Class<?> cls) {
+    return wirings.get(cls.getName());
+  }
+
+  /**
+   * Get the unresolved and ambiguous injection points found while resolving
+   *
+   * @return problems, empty for a descriptor that was read back
+   */
+  public List<String> problems() {
+    return Collections.unmodifiableList(problems);
+  }
+
+  private void resolve(BeanDefinition beanDefinition) {
+    final boolean conditional = conditional(beanDefinition);
+    final Method factoryMethod = beanDefinition.factoryMethod();
+    if (factoryMethod != null) {
+      final List<BeanDefinition.Dependency> dependencies = beanDefinition.dependencies();
+      resolveParameters(dependencies.subList(1, dependencies.size()),
+              beanDefinition.factoryBean() + "#" + factoryMethod.getName(), conditional);
+      return;
+    }
+    final Class<?> beanClass = beanDefinition.beanClass();
+    if (beanDefinition.constructor() != null) {
+      resolveParameters(beanDefinition.dependencies().subList(0, beanDefinition.constructor().getParameterCount()),
+              beanClass.getName() + " constructor", conditional);
+    }
+    for (InjectionPlan.InjectionMethod injectMethod : InjectionPlan.of(beanClass).injectMethods()) {
+      resolveParameters(injectMethod.dependencies(), injectMethod.method().getDeclaringClass().getName()
+              + "#" + injectMethod.method().getName(), conditional);
+    }
+    if (wirings.containsKey(beanClass.getName())) {
+      return;
+    }
+    final Map<String, String> fields = new LinkedHashMap<>();
+    for (Field field : beanClass.getDeclaredFields()) {
+      if (!field.isAnnotationPresent(Inject.class)) {
+        continue;
+      }
+      final String point = beanClass.getName() + "#" + field.getName();
+      final BeanDefinition.Dependency dependency = BeanDefinition.Dependency.of(field.getType(), field.getGenericType(), field);
+      if (dependency.wrapper() != null) {
+        // wrappers are resolved at runtime, the bean they wrap is only checked
+        resolveParameters(Collections.singletonList(dependency), point, conditional);
+        continue;
+      }
+      final Class<?> type = field.getType();
+      final String target;
+      if (dependency.qualifier() != null && beanDefinitions.containsKey(dependency.qualifier())) {
+        target = dependency.qualifier();
+      } else if (beanDefinitions.containsKey(type.getName())) {
+        target = type.getName();
+      } else {
+        // interfaces, superclasses and abstract classes alike, as at runtime
+        target = candidate(type, dependency.qualifier(), point, conditional);
+      }
+      if (target != null && !conditional(beanDefinitions.get(target))) {
+        fields.put(field.getName(), target);
+      }
+    }
+    final PropertyBean propertyBean = beanClass.getAnnotation(PropertyBean.class);
+    if (!fields.isEmpty() || propertyBean != null) {
+      wirings.put(beanClass.getName(), new Wiring(propertyBean != null ? propertyBean.value() : null, fields));
+    }
+  }
+
+  /**
+   * Check that the parameters of a factory method, constructor or inject
+   * method resolve, by qualifier, by type name or to a single candidate
+   */
+  private void resolveParameters(List<BeanDefinition.Dependency> dependencies, String executable, boolean conditional) {
+    for (BeanDefinition.Dependency dependency : dependencies) {
+      if (dependency.optional()) {
+        // an optional is empty rather than unresolved
+        continue;
+      }
+      if (!beanDefinitions.containsKey(dependency.qualifier())
+              && !beanDefinitions.containsKey(dependency.type().getName())) {
+        candidate(dependency.type(), dependency.qualifier(), executable + " parameter " + dependency, conditional);
+      }
+    }
+  }
+
+  /**
+   * Find the single bean assignable to the type through a {@link TypeIndex},
+   * the way {@link AbstractFactory} does at runtime
+   */
+  private String candidate(Class<?> type, String qualifier, String point, boolean conditional) {
+    final List<String> candidates = new ArrayList<>();
+    boolean conditionalCandidate = false;
+    for (String name : typeIndex.names(type)) {
+      if (conditional(beanDefinitions.get(name))) {
+        conditionalCandidate = true;
+      } else {
+        candidates.add(name);
+      }
+    }
+    if (candidates.isEmpty() && !conditionalCandidate) {
+      report(conditional, "Unresolved injection point " + point + ", no bean of type " + type.getName());
+    } else if (candidates.size() > 1) {
+      try {
+        return TypeIndex.select(type, candidates, qualifier, beanDefinitions::get);
+      } catch (QualifierNotUniqueException e) {
+        report(conditional, "Ambiguous injection point " + point + ", " + e.getMessage());
+      }
+    } else if (candidates.size() == 1 && !conditionalCandidate) {
+      return candidates.get(0);
+    }
+    return null;
+  }
+
+  /**
+   * A conditional bean may legitimately miss its dependencies, since they are
+   * often what its condition is about, so its problems are only logged
+   */
+  private void report(boolean conditional, String problem) {
+    if (conditional) {
+      log.debug("{} in a conditional bean", problem);
+    } else {
+      problems.add(problem);
+    }
+  }
+
+  private static boolean conditional(BeanDefinition beanDefinition) {
+    final Method factoryMethod = beanDefinition.factoryMethod();
+    return factoryMethod != null
+            ? conditional(factoryMethod) || conditional(factoryMethod.getDeclaringClass())
+            : conditional(beanDefinition.beanClass());
+  }
+
+  private static boolean conditional(AnnotatedElement element) {
+    return element.isAnnotationPresent(ConditionalOnProperty.class)
+            || element.isAnnotationPresent(ConditionalOnClass.class)
+            || element.isAnnotationPresent(ConditionalOnMissingBean.class);
+  }
+
+  private static Class<?> loadClass(String className, ClassLoader classLoader) throws IOException {
+    try {
+      return ClassUtils.getClass(classLoader, className, false);
+    } catch (ClassNotFoundException | LinkageError e) {
+      throw new IOException("Missing class " + className, e);
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream in) throws IOException {
+    final List<String> values = new ArrayList<>();
+    for (int i = in.readUnsignedShort(); i > 0; i--) {
+      values.add(in.readUTF());
+    }
+    return values;
+  }
+
+  private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+    out.writeShort(values.size());
+    for (String value : values) {
+      out.writeUTF(value);
+    }
+  }
+
+  /**
+   * The wiring of a class: the bean each {@link Inject} field resolves to and
+   * its {@link PropertyBean} prefix
+   */
+  public static class Wiring {
+    private final String propertyPrefix;
+    private final Map<String, String> fields;
+
+    Wiring(String propertyPrefix, Map<String, String> fields) {
+      this.propertyPrefix = propertyPrefix;
+      this.fields = Collections.unmodifiableMap(fields);
+    }
+
+    public String propertyPrefix() {
+      return propertyPrefix;
+    }
+
+    /**
+     * Get the bean names of the {@link Inject} fields resolved at build time
+     *
+     * @return bean name by field name
+     */
+    public Map<String, String> fields() {
+      return fields;
+    }
+  }
+}
@@ -24,20 +24,12 @@
 package org.apex.injector;
 
 import org.apex.InjectContext;
+import org.apex.InjectionPlan;
 import org.apex.Injector;
-import org.apex.annotation.Inject;
-import org.apex.annotation.Named;
-import org.apex.annotation.Qualifier;
-import org.apex.exception.QualifierNotUniqueException;
+import org.apex.WiringDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-
 /**
  * @author WangYi
  * @since 2020/7/9
@@ -47,47 +39,14 @@ public class FieldInjector implements Injector {
 
   @Override
   public void inject(InjectContext injectContext) throws Exception {
-    Field[] fields = injectContext.klassInfo().clazz().getDeclaredFields();
-    for (Field field : fields) {
-      if (!field.isAnnotationPresent(Inject.class)) {
-        continue;
-      }
-      String id = field.getType().getName();
-      Inject inject = field.getAnnotation(Inject.class);
-      if (Objects.nonNull(inject)) {
-        Named named = field.getAnnotation(Named.class);
-        if (Objects.nonNull(named) &&
-                Objects.equals(named.value(), "")) {
-          id = named.value();
-        }
-      }
-      field.setAccessible(true);
+    final InjectionPlan plan = InjectionPlan.of(injectContext.klassInfo().clazz());
+    final WiringDescriptor.Wiring wiring = injectContext.wiring();
+    for (InjectionPlan.InjectionPoint point : plan.injectPoints()) {
+      final String wired = wiring != null ? wiring.fields().get(point.name()) : null;
       try {
-        if (!field.getType().isInterface()) {
-          field.set(injectContext.object(), injectContext.instances().get(id));
-        } else {
-          Object injectObj = injectContext.instances().get(id);
-          if (Objects.isNull(injectObj)) {
-            final List<Object> refs = new ArrayList<>();
-            for (Map.Entry<String, Object> entry : injectContext.instances().entrySet()) {
-              Object value = entry.getValue();
-              if (field.getType().isAssignableFrom(value.getClass())) {
-                refs.add(value);
-              }
-            }
-            if (refs.size() > 1) {
-              if (!field.isAnnotationPresent(Qualifier.class)) {
-                throw new QualifierNotUniqueException("Qualifier are not unique " + field.getName());
-              } else {
-                final Qualifier qualifier = field.getAnnotation(Qualifier.class);
-                injectObj = injectContext.instances().get(qualifier.value());
-              }
-            } else {
-              injectObj = refs.get(0);
-            }
-          }
-          field.set(injectContext.object(), injectObj);
-        }
+        // qualifier, type name, then the candidate selected once per type and qualifier
+        point.set(injectContext.object(), wired != null ? injectContext.bean(wired)
+                : injectContext.dependency(point.dependency()));
       } catch (IllegalAccessException e) {
         log.error("An exception occurred while injecting field");
         throw e;
@@ -23,17 +23,14 @@
  */
 package org.apex.injector;
 
-import org.apache.commons.lang3.ObjectUtils;
 import org.apex.Apex;
 import org.apex.Environment;
 import org.apex.InjectContext;
+import org.apex.InjectionPlan;
 import org.apex.Injector;
-import org.apex.annotation.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Field;
-
 /**
  * @author WangYi
  * @since 2020/7/29
@@ -44,26 +41,13 @@ public class FieldValueInjector implements Injector {
 
   @Override
   public void inject(InjectContext injectContext) throws IllegalAccessException {
-    Field[] fields = injectContext.klassInfo().clazz().getDeclaredFields();
-    if (ObjectUtils.isEmpty(fields)) {
-      return;
-    }
-    for (Field field : fields) {
-      if (!field.isAnnotationPresent(Value.class)) {
-        continue;
-      }
-      Value value = field.getAnnotation(Value.class);
-      String elValue = value.value();
-      if (elValue.length() > 0 && elValue.startsWith("${") && elValue.endsWith("}")) {
-        final String key = value.value().replace("${", "")
-                .replace("}", "");
-        field.setAccessible(true);
-        try {
-          field.set(injectContext.object(), environment.getString(key, null));
-        } catch (IllegalAccessException e) {
-          log.error("An exception occurred while injecting value field");
-          throw e;
-        }
+    final InjectionPlan plan = InjectionPlan.of(injectContext.klassInfo().clazz());
+    for (InjectionPlan.InjectionPoint point : plan.valuePoints()) {
+      try {
+        point.set(injectContext.object(), environment.getString(point.key(), null));
+      } catch (IllegalAccessException e) {
+        log.error("An exception occurred while injecting value field");
+        throw e;
       }
     }
   }
@@ -0,0 +1,67 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex.injector;
+
+import org.apex.BeanDefinition;
+import org.apex.InjectContext;
+import org.apex.InjectionPlan;
+import org.apex.Injector;
+import org.apex.exception.BeanInstantiationException;
+
+import java.util.List;
+
+/**
+ * Invokes the {@link org.apex.annotation.Inject} methods of a bean once its
+ * fields are injected, superclass methods first, with every parameter
+ * resolved from the container.
+ *
+ * @author WangYi
+ * @since 2020/11/16
+ */
+public class MethodInjector implements Injector {
+
+  @Override
+  public void inject(InjectContext injectContext) throws Exception {
+    final InjectionPlan plan = InjectionPlan.of(injectContext.klassInfo().clazz());
+    for (InjectionPlan.InjectionMethod injectMethod : plan.injectMethods()) {
+      final List<BeanDefinition.Dependency> dependencies = injectMethod.dependencies();
+      final Object[] args = new Object[dependencies.size()];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = injectContext.dependency(dependencies.get(i));
+        if (args[i] == null) {
+          throw new BeanInstantiationException("No bean found for parameter "
+                  + dependencies.get(i) + " of " + injectMethod.method());
+        }
+      }
+      try {
+        injectMethod.invoke(injectContext.object(), args);
+      } catch (BeanInstantiationException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new BeanInstantiationException("Exception occurred when invoking '"
+                + injectMethod.method() + "'", e);
+      }
+    }
+  }
+}
@@ -26,16 +26,12 @@ package org.apex.injector;
 import org.apex.Apex;
 import org.apex.Environment;
 import org.apex.InjectContext;
+import org.apex.InjectionPlan;
 import org.apex.Injector;
-import org.apex.KlassInfo;
-import org.apex.TypeInjector;
-import org.apex.annotation.PropertyBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Field;
 import java.util.Objects;
-import java.util.ServiceLoader;
 
 /**
  * @author WangYi
@@ -44,36 +40,23 @@ import java.util.ServiceLoader;
 public class PropertyBeanInjector implements Injector {
   private final Logger log = LoggerFactory.getLogger(PropertyBeanInjector.class);
   private final Environment environment = Apex.of().environment();
-  private final ServiceLoader<TypeInjector> typeInjectors = ServiceLoader.load(TypeInjector.class);
 
   @Override
   public void inject(InjectContext injectContext) throws Exception {
-    KlassInfo klassInfo = injectContext.klassInfo();
-    if (!klassInfo.clazz().isAnnotationPresent(PropertyBean.class)) {
-      return;
-    }
-    final Field[] fields = klassInfo.clazz().getDeclaredFields();
-    final PropertyBean annotation = klassInfo.clazz().getAnnotation(PropertyBean.class);
-    final String prefix = annotation.value();
-    for (Field field : fields) {
-      field.setAccessible(true);
+    final InjectionPlan plan = InjectionPlan.of(injectContext.klassInfo().clazz());
+    for (InjectionPlan.InjectionPoint point : plan.propertyPoints()) {
       Object fieldProperty = null;
-
-      String name = prefix + "." + field.getName();
-
-      for (TypeInjector typeInjector : typeInjectors) {
-        if (field.getType().equals(typeInjector.getType())) {
-          fieldProperty = typeInjector.inject(name);
-        }
+      if (point.typeInjector() != null) {
+        fieldProperty = point.typeInjector().inject(point.key());
       }
       if (Objects.isNull(fieldProperty)) {
-        fieldProperty = environment.getObject(name);
+        fieldProperty = environment.getObject(point.key());
       }
       try {
-        field.set(injectContext.object(), fieldProperty);
+        point.set(injectContext.object(), fieldProperty);
       } catch (IllegalAccessException e) {
         log.error("Injection exception, current field: {} " +
-                "injection {} failed", field.getName(), fieldProperty);
+                "injection {} failed", point.name(), fieldProperty);
         throw e;
       }
     }
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex.scope;
+
+import org.apex.BeanScope;
+import org.apex.ScopedBean;
+import org.apex.annotation.RequestScoped;
+import org.apex.exception.OutOfScopeException;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Strategy of {@link RequestScoped}: a request is a unit of work opened and
+ * closed around its processing, on the thread that runs it.
+ *
+ * <pre>
+ *   try (RequestScope.Request request = context.scope(RequestScope.class).open()) {
+ *     handler.handle();
+ *   }</pre>
+ * <p>
+ * Each request gets its own instance of a bean, created on its first lookup
+ * in the request. Closing the request closes the instances that are
+ * {@link AutoCloseable}, in the reverse order of their creation. Looking a
+ * bean up while no request is open throws {@link OutOfScopeException}.
+ *
+ * @author WangYi
+ * @since 2020/11/23
+ */
+public class RequestScope implements BeanScope {
+  private final ThreadLocal<Request> current = new ThreadLocal<>();
+
+  @Override
+  public Class<? extends Annotation> annotation() {
+    return RequestScoped.class;
+  }
+
+  @Override
+  public Object get(ScopedBean bean) {
+    final Request request = current.get();
+    if (request == null) {
+      throw new OutOfScopeException("No request is open on thread "
+              + Thread.currentThread().getName() + " to get " + bean.name());
+    }
+    return request.instances.get(bean);
+  }
+
+  /**
+   * Open a request on the current thread
+   *
+   * @return request, to be closed once the unit of work is done
+   * @throws IllegalStateException if a request is already open on the thread
+   */
+  public Request open() {
+    if (current.get() != null) {
+      throw new IllegalStateException("A request is already open on thread " + Thread.currentThread().getName());
+    }
+    final Request request = new Request();
+    current.set(request);
+    return request;
+  }
+
+  /**
+   * Whether a request is open on the current thread
+   *
+   * @return true inside a request
+   */
+  public boolean active() {
+    return current.get() != null;
+  }
+
+  /**
+   * A request open on a thread, holding the instances created in it
+   */
+  public final class Request implements AutoCloseable {
+    private final ScopedInstances instances = new ScopedInstances();
+    private boolean closed;
+
+    private Request() {
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (current.get() == this) {
+        current.remove();
+      }
+      instances.close();
+    }
+  }
+}
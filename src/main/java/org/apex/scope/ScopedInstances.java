@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex.scope;
+
+import org.apex.ScopedBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The instances of one scope, a thread or a request, indexed by
+ * {@link ScopedBean#index()}. Confined to the thread that owns the scope,
+ * so it needs no synchronization; a lookup of an existing instance is an
+ * array read.
+ *
+ * @author WangYi
+ * @since 2020/11/23
+ */
+final class ScopedInstances {
+  private static final Logger log = LoggerFactory.getLogger(ScopedInstances.class);
+
+  private final List<Object> created = new ArrayList<>();
+  private Object[] instances = new Object[16];
+  private ScopedBean[] owners = new ScopedBean[16];
+
+  /**
+   * Get the instance of a bean, created on first use. An index is kept when
+   * a bean is redefined, so the instance of the previous handle is replaced.
+   */
+  Object get(ScopedBean bean) {
+    final int index = bean.index();
+    if (index < instances.length && owners[index] == bean) {
+      return instances[index];
+    }
+    final Object instance = bean.create();
+    if (index >= instances.length) {
+      final int length = Math.max(index + 1, instances.length * 2);
+      instances = Arrays.copyOf(instances, length);
+      owners = Arrays.copyOf(owners, length);
+    }
+    instances[index] = instance;
+    owners[index] = bean;
+    created.add(instance);
+    return instance;
+  }
+
+  /**
+   * Drop the instances, closing the {@link AutoCloseable} ones in the reverse
+   * order of their creation
+   */
+  void close() {
+    for (int i = created.size() - 1; i >= 0; i--) {
+      final Object instance = created.get(i);
+      if (instance instanceof AutoCloseable) {
+        try {
+          ((AutoCloseable) instance).close();
+        } catch (Exception e) {
+          log.warn("An exception occurred while closing scoped bean {}", instance, e);
+        }
+      }
+    }
+    created.clear();
+    instances = new Object[16];
+    owners = new ScopedBean[16];
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex.scope;
+
+import org.apex.BeanScope;
+import org.apex.ScopedBean;
+import org.apex.annotation.ThreadScoped;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Strategy of {@link ThreadScoped}: each thread gets its own instance of a
+ * bean, created on its first lookup on the thread. Instances live until
+ * {@link #end()} is called on their thread, or until the thread dies.
+ *
+ * @author WangYi
+ * @since 2020/11/23
+ */
+public class ThreadScope implements BeanScope {
+  private final ThreadLocal<ScopedInstances> instances = ThreadLocal.withInitial(ScopedInstances::new);
+
+  @Override
+  public Class<? extends Annotation> annotation() {
+    return ThreadScoped.class;
+  }
+
+  @Override
+  public Object get(ScopedBean bean) {
+    return instances.get().get(bean);
+  }
+
+  /**
+   * End the scope of the current thread, closing the instances created on it
+   * that are {@link AutoCloseable}. The next lookup on the thread creates new ones.
+   */
+  public void end() {
+    final ScopedInstances current = instances.get();
+    instances.remove();
+    current.close();
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package example.bean;
+
+import org.apex.annotation.ConditionalOnClass;
+import org.apex.annotation.ConditionalOnMissingBean;
+import org.apex.annotation.ConditionalOnProperty;
+import org.apex.annotation.Singleton;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author WangYi
+ * @since 2020/11/12
+ */
+public class ConditionalUser {
+  public static final AtomicInteger CREATED = new AtomicInteger();
+
+  public ConditionalUser() {
+    CREATED.incrementAndGet();
+  }
+
+  @Singleton
+  @ConditionalOnProperty("example.conditional.enabled")
+  public static class OnProperty extends ConditionalUser {}
+
+  @Singleton
+  @ConditionalOnClass("example.bean.NotOnClasspath")
+  public static class OnClass extends ConditionalUser {}
+
+  @Singleton
+  @ConditionalOnMissingBean(User.class)
+  public static class OnMissingBean extends ConditionalUser {}
+
+  @Singleton
+  @ConditionalOnMissingBean
+  @ConditionalOnClass("example.bean.User")
+  public static class Fallback extends ConditionalUser {}
+}
@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package example.bean;
+
+import org.apex.annotation.Inject;
+import org.apex.annotation.Singleton;
+
+/**
+ * A field cycle with two entry points, {@link Left} and {@link Right}, both
+ * slow to create
+ *
+ * @author WangYi
+ * @since 2020/11/17
+ */
+@Singleton
+public class CycleUser {
+  @Inject
+  private Left left;
+  @Inject
+  private Right right;
+
+  public Left getLeft() {
+    return left;
+  }
+
+  public Right getRight() {
+    return right;
+  }
+
+  private static void pause() {
+    try {
+      Thread.sleep(20);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Singleton
+  public static class Left {
+    @Inject
+    private CycleUser cycleUser;
+
+    public Left() {
+      pause();
+    }
+
+    public CycleUser getCycleUser() {
+      return cycleUser;
+    }
+  }
+
+  @Singleton
+  public static class Right {
+    @Inject
+    private CycleUser cycleUser;
+
+    public Right() {
+      pause();
+    }
+
+    public CycleUser getCycleUser() {
+      return cycleUser;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package example.bean;
+
+import org.apex.annotation.Inject;
+import org.apex.annotation.Provider;
+import org.apex.annotation.Singleton;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * @author WangYi
+ * @since 2020/11/21
+ */
+@Singleton
+public class ProviderUser {
+  private final Optional<User2> user2;
+
+  @Inject
+  Provider<LazyUser> lazyUser;
+
+  @Inject
+  Supplier<User3> user3;
+
+  @Inject
+  Optional<Missing> missing;
+
+  @Inject
+  ProviderUser(Optional<User2> user2) {
+    this.user2 = user2;
+  }
+
+  public Optional<User2> getUser2() {
+    return user2;
+  }
+
+  public Provider<LazyUser> getLazyUser() {
+    return lazyUser;
+  }
+
+  public Supplier<User3> getUser3() {
+    return user3;
+  }
+
+  public Optional<Missing> getMissing() {
+    return missing;
+  }
+
+  public interface Missing {
+  }
+}
@@ -27,6 +27,7 @@ import example.bean.User3;
 import org.apex.annotation.Bean;
 import org.apex.annotation.ConfigBean;
 import org.apex.annotation.Inject;
+import org.apex.annotation.Primary;
 
 /**
  * @author WangYi
@@ -39,6 +40,7 @@ public class UserConfig {
   private ConfigProperty configProperty;
 
   @Bean
+  @Primary
   public User3 user3() {
     User3 user = new User3();
     user.setPassword("111");
@@ -0,0 +1,558 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import example.bean.BeanFilter;
+import example.bean.ConditionalUser;
+import example.bean.ConstructorUser;
+import example.bean.CycleUser;
+import example.bean.FilteredUser;
+import example.bean.LazyUser;
+import example.bean.MethodUser;
+import example.bean.PooledBuffer;
+import example.bean.PrototypeUser;
+import example.bean.RequestUser;
+import example.bean.ThreadUser;
+import example.bean.ProviderUser;
+import example.bean.User;
+import example.bean.User2;
+import example.bean.User3;
+import example.config.UserConfig;
+import org.apex.annotation.ConfigBean;
+import org.apex.annotation.Inject;
+import org.apex.annotation.Pooled;
+import org.apex.annotation.Prototype;
+import org.apex.annotation.PropertyBean;
+import org.apex.annotation.RequestScoped;
+import org.apex.annotation.Singleton;
+import org.apex.annotation.ThreadScoped;
+import org.apex.exception.BeanInstantiationException;
+import org.apex.exception.OutOfScopeException;
+import org.apex.scope.RequestScope;
+import org.apex.scope.ThreadScope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author WangYi
+ * @since 2020/11/6
+ */
+public class ApexContextTest {
+  private ApexSettings settings;
+  private ApexContext context;
+
+  @Before
+  public void setUp() throws Exception {
+    Apex apex = Apex.of();
+    settings = ApexSettings.save(apex);
+    apex.packages().add("example");
+    apex.typeAnnotation(ConfigBean.class, PropertyBean.class, Singleton.class, Prototype.class, Pooled.class,
+            ThreadScoped.class, RequestScoped.class);
+    ConditionalUser.CREATED.set(0);
+    context = new ApexContext();
+    context.init(apex);
+  }
+
+  @After
+  public void tearDown() {
+    settings.restore();
+  }
+
+  @Test
+  public void testDiscoveryStats() {
+    DiscoveryStats stats = context.discoveryStats();
+    assertEquals(stats.matched(), stats.loaded());
+    assertEquals(stats.loaded(), stats.rejected() + stats.defined());
+    assertNotNull(context.klassInfoMap.get(User.class.getName()));
+  }
+
+  @Test
+  public void testTypeFilters() throws Exception {
+    // a type filter carrying a type annotation is a bean too
+    assertNotNull(context.getBean(BeanFilter.class));
+    assertFalse(context.containsBeanDefinition(FilteredUser.class.getName()));
+
+    // a class is accepted if any type filter accepts it
+    TypeFilter filteredUser = cls -> cls == FilteredUser.class;
+    ApexContext filteredContext = new ApexContext();
+    filteredContext.init(Apex.of().typeFilter(filteredUser));
+    assertTrue(filteredContext.containsBeanDefinition(FilteredUser.class.getName()));
+    assertTrue(filteredContext.containsBeanDefinition(User.class.getName()));
+  }
+
+  @Test
+  public void testBeanDefinitions() {
+    BeanDefinition lazyUser = context.getBeanDefinition(LazyUser.class.getName());
+    assertTrue(lazyUser.lazy());
+    assertEquals(Singleton.class, lazyUser.scope());
+    assertEquals(Collections.singletonList(new BeanDefinition.Dependency(User2.class, null)),
+            lazyUser.dependencies());
+
+    // named after their methods, so the methods returning User3 don't overwrite each other
+    BeanDefinition user3 = context.getBeanDefinition("user3");
+    assertNotNull(user3.factoryMethod());
+    assertEquals(UserConfig.class.getName(), user3.factoryBean());
+    assertNotNull(context.getBeanDefinition("user4"));
+    assertNotNull(context.instances().get("user3"));
+    assertNotSame(context.instances().get("user3"), context.instances().get("user4"));
+    // the primary one of them
+    assertSame(context.instances().get("user3"), context.getBean(User3.class));
+  }
+
+  @Test
+  public void testLazyBean() {
+    LazyUser.CREATED.set(0);
+    assertNotNull(context.getBean(User.class));
+    assertEquals(0, LazyUser.CREATED.get());
+    assertEquals(BeanState.DEFINED, context.beanState(LazyUser.class.getName()));
+    assertEquals(BeanState.READY, context.beanState(User.class.getName()));
+
+    LazyUser lazyUser = context.getBean(LazyUser.class);
+    assertNotNull(lazyUser);
+    assertSame(context.getBean(User2.class), lazyUser.getUser2());
+    assertSame(lazyUser, context.getBean(LazyUser.class));
+    assertEquals(1, LazyUser.CREATED.get());
+    assertEquals(BeanState.READY, context.beanState(LazyUser.class.getName()));
+  }
+
+  @Test
+  public void testConditionalBeans() {
+    assertFalse(context.containsBeanDefinition(ConditionalUser.OnProperty.class.getName()));
+    assertFalse(context.containsBeanDefinition(ConditionalUser.OnClass.class.getName()));
+    assertFalse(context.containsBeanDefinition(ConditionalUser.OnMissingBean.class.getName()));
+    assertTrue(context.containsBeanDefinition(ConditionalUser.Fallback.class.getName()));
+    assertEquals(1, ConditionalUser.CREATED.get());
+  }
+
+  @Test
+  public void testConditionalOnAbsentClass() throws Exception {
+    Apex apex = Apex.of();
+    Thread thread = Thread.currentThread();
+    ClassLoader classLoader = thread.getContextClassLoader();
+    apex.packages().clear();
+    apex.packages().add("optional");
+    thread.setContextClassLoader(new HidingClassLoader(classLoader, "optional.", "optional.Missing"));
+    try {
+      ApexContext optionalContext = new ApexContext();
+      optionalContext.init(apex);
+      // the inject constructor refers to the absent class
+      assertFalse(optionalContext.containsBeanDefinition("optional.OptionalUser"));
+      // so does a bean method, which fails the whole configuration bean
+      assertFalse(optionalContext.containsBeanDefinition("optional.OptionalConfig"));
+      assertFalse(optionalContext.containsBeanDefinition("missing"));
+      assertNotNull(optionalContext.getBean("optional.PlainUser"));
+    } finally {
+      thread.setContextClassLoader(classLoader);
+    }
+  }
+
+  @Test
+  public void testConstructorInjection() {
+    BeanDefinition definition = context.getBeanDefinition(ConstructorUser.class.getName());
+    assertNotNull(definition.constructor());
+    assertEquals(new BeanDefinition.Dependency(User2.class, null), definition.dependencies().get(0));
+
+    ConstructorUser constructorUser = context.getBean(ConstructorUser.class);
+    assertSame(context.getBean(User2.class), constructorUser.getUser2());
+    assertSame(context.getBean(User3.class), constructorUser.getUser3());
+  }
+
+  @Test
+  public void testAddBeanWithConstructor() {
+    ApexContext addContext = new ApexContext();
+    User2 user2 = addContext.addBean(new User2());
+    User3 user3 = addContext.addBean(new User3());
+    ConstructorUser constructorUser = addContext.addBean(ConstructorUser.class);
+    assertSame(user2, constructorUser.getUser2());
+    assertSame(user3, constructorUser.getUser3());
+    assertSame(constructorUser, addContext.getBean(ConstructorUser.class));
+  }
+
+  @Test
+  public void testUnresolvedBeanMethodParameter() throws Exception {
+    ApexContext methodContext = new ApexContext();
+    methodContext.addBean(new ThreadConfig());
+    methodContext.registerBeanDefinition(BeanDefinition.create(ThreadConfig.class.getName(),
+            ThreadConfig.class.getDeclaredMethod("name", Thread.class), true));
+    try {
+      methodContext.getBean("name");
+      fail("no bean of type Thread is registered");
+    } catch (BeanInstantiationException e) {
+      // like a constructor parameter, rather than passing null to the method
+      assertTrue(e.getMessage(), e.getMessage().startsWith("No bean found for bean method parameter"));
+    }
+  }
+
+  @Test
+  public void testProviderInjection() {
+    BeanDefinition definition = context.getBeanDefinition(ProviderUser.class.getName());
+    assertTrue(definition.dependencies().contains(new BeanDefinition.Dependency(LazyUser.class, null,
+            org.apex.annotation.Provider.class)));
+    assertTrue(context.dependencyGraph().problems().isEmpty());
+
+    LazyUser.CREATED.set(0);
+    ProviderUser providerUser = context.getBean(ProviderUser.class);
+    assertSame(context.getBean(User2.class), providerUser.getUser2().get());
+    assertSame(context.getBean(User3.class), providerUser.getUser3().get());
+    assertFalse(providerUser.getMissing().isPresent());
+
+    // the lazy bean is only created when the provider is called
+    assertEquals(BeanState.DEFINED, context.beanState(LazyUser.class.getName()));
+    LazyUser lazyUser = providerUser.getLazyUser().get();
+    assertEquals(1, LazyUser.CREATED.get());
+    assertSame(lazyUser, providerUser.getLazyUser().get());
+    assertSame(context.getBean(LazyUser.class), lazyUser);
+  }
+
+  @Test
+  public void testPrototypeBean() {
+    PrototypeUser.CREATED.set(0);
+    PrototypeUser first = context.getBean(PrototypeUser.class);
+    PrototypeUser second = context.getBean(PrototypeUser.class);
+    assertNotSame(first, second);
+    assertEquals(2, PrototypeUser.CREATED.get());
+    assertSame(context.getBean(User2.class), first.getUser2());
+    assertSame(context.getBean(User2.class), second.getUser2());
+    assertEquals(BeanState.DEFINED, context.beanState(PrototypeUser.class.getName()));
+    assertTrue(context.getBeanByType(PrototypeUser.class).isEmpty());
+  }
+
+  @Test
+  public void testPooledBean() {
+    BeanPool<PooledBuffer> pool = context.pool(PooledBuffer.class);
+    assertSame(pool, context.pool(PooledBuffer.class));
+    assertEquals(2, pool.maxSize());
+
+    PooledBuffer first = pool.borrow();
+    PooledBuffer second = pool.borrow();
+    PooledBuffer third = pool.borrow();
+    assertNotSame(first, second);
+    assertTrue(pool.release(first.append("a")));
+    assertTrue(pool.release(second));
+    assertFalse(pool.release(third));
+    assertEquals(2, pool.idle());
+
+    assertSame(first, pool.borrow());
+    assertEquals("a", first.drain());
+    assertEquals(1, pool.idle());
+    assertNotSame(context.getBean(PooledBuffer.class), context.getBean(PooledBuffer.class));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPoolOfSingleton() {
+    context.pool(User2.class);
+  }
+
+  @Test
+  public void testThreadScope() throws Exception {
+    assertFalse(context.shared(context.getBeanDefinition(ThreadUser.class.getName())));
+    ThreadUser threadUser = context.getBean(ThreadUser.class);
+    assertSame(threadUser, context.getBean(ThreadUser.class));
+    assertSame(context.getBean(User2.class), threadUser.getUser2());
+    assertNotSame(threadUser, CompletableFuture.supplyAsync(() -> context.getBean(ThreadUser.class)).get());
+
+    context.scope(ThreadScope.class).end();
+    ThreadUser next = context.getBean(ThreadUser.class);
+    assertNotSame(threadUser, next);
+
+    // a redefined bean takes the slot of the previous one in the scope
+    context.registerBeanDefinition(BeanDefinition.create(ThreadUser.class, false));
+    assertNotSame(next, context.getBean(ThreadUser.class));
+  }
+
+  @Test
+  public void testScopedDependency() {
+    ApexContext scopedContext = new ApexContext();
+    scopedContext.registerBeanDefinition(BeanDefinition.create(User2.class, false));
+    scopedContext.registerBeanDefinition(BeanDefinition.create(ThreadUser.class, false));
+    scopedContext.registerBeanDefinition(BeanDefinition.create(ThreadUserHolder.class, false));
+    scopedContext.registerBeanDefinition(BeanDefinition.create(ThreadUserProvider.class, false));
+    List<String> problems = DependencyGraph.create(scopedContext, scopedContext::shared).problems();
+    assertEquals(problems.toString(), 1, problems.size());
+    assertTrue(problems.get(0), problems.get(0).startsWith("Scoped dependency "));
+    assertTrue(problems.get(0), problems.get(0).contains(ThreadUserHolder.class.getName()));
+  }
+
+  @Test
+  public void testRequestScope() {
+    RequestScope requestScope = context.scope(RequestScope.class);
+    RequestUser requestUser;
+    RequestScope.Request request = requestScope.open();
+    try {
+      assertTrue(requestScope.active());
+      requestUser = context.getBean(RequestUser.class);
+      assertSame(requestUser, context.getBean(RequestUser.class));
+      assertFalse(requestUser.isClosed());
+    } finally {
+      request.close();
+    }
+    assertTrue(requestUser.isClosed());
+    assertFalse(requestScope.active());
+    RequestScope.Request next = requestScope.open();
+    try {
+      assertNotSame(requestUser, context.getBean(RequestUser.class));
+    } finally {
+      next.close();
+    }
+  }
+
+  @Test(expected = OutOfScopeException.class)
+  public void testOutOfRequestScope() {
+    context.getBean(RequestUser.class);
+  }
+
+  @Test
+  public void testMethodInjection() {
+    MethodUser methodUser = context.getBean(MethodUser.class);
+    assertSame(context.getBean(User3.class), methodUser.getUser3());
+    assertSame(methodUser, context.getBean(MethodUser.class));
+    // injected once, lookups don't inject again
+    assertEquals(Arrays.asList("setUser2", "wire"), methodUser.getCalls());
+
+    assertSame(methodUser, context.reinject(methodUser));
+    assertEquals(Arrays.asList("setUser2", "wire", "setUser2", "wire"), methodUser.getCalls());
+  }
+
+  @Test
+  public void testDependencyGraph() {
+    DependencyGraph graph = context.dependencyGraph();
+    assertTrue(graph.problems().isEmpty());
+    assertTrue(graph.dependencies(User.class.getName()).contains("user3"));
+    assertEquals(Collections.singleton(UserConfig.class.getName()), graph.dependencies("user3"));
+
+    List<String> order = new ArrayList<>();
+    for (BeanDefinition beanDefinition : graph.order()) {
+      order.add(beanDefinition.name());
+    }
+    assertTrue(order.indexOf(UserConfig.class.getName()) < order.indexOf("user3"));
+    assertTrue(order.indexOf("user3") < order.indexOf(User.class.getName()));
+
+    // wired once, inject methods included
+    MethodUser methodUser = (MethodUser) context.instances().get(MethodUser.class.getName());
+    assertEquals(Arrays.asList("setUser2", "wire"), methodUser.getCalls());
+  }
+
+  @Test
+  public void testDependencyGraphOfLongChain() throws Exception {
+    // each link is produced by the next one, deeper than a recursive walk could go
+    int length = 100000;
+    ApexContext chainContext = new ApexContext();
+    Method next = Link.class.getDeclaredMethod("next");
+    chainContext.registerBeanDefinition(BeanDefinition.create(Link.class, false));
+    for (int i = 0; i < length; i++) {
+      String factoryBean = i + 1 < length ? "link" + (i + 1) : Link.class.getName();
+      chainContext.registerBeanDefinition(BeanDefinition.create("link" + i, Link.class, Singleton.class,
+              Collections.singleton("link" + i), factoryBean, next, false));
+    }
+    DependencyGraph graph = DependencyGraph.create(chainContext);
+    assertTrue(graph.problems().isEmpty());
+    assertEquals(length + 1, graph.order().size());
+    assertEquals(Link.class.getName(), graph.order().get(0).name());
+    assertEquals("link0", graph.order().get(length).name());
+    assertEquals(length + 1, graph.components().size());
+    assertEquals("link0", graph.components().get(length).get(0).name());
+  }
+
+  @Test
+  public void testParallelWiring() throws Exception {
+    ApexContext parallelContext = new ApexContext();
+    parallelContext.init(Apex.of().wiringParallelism(4));
+    assertEquals(context.instances().keySet(), parallelContext.instances().keySet());
+
+    ConstructorUser constructorUser = parallelContext.getBean(ConstructorUser.class);
+    assertSame(parallelContext.instances().get(User2.class.getName()), constructorUser.getUser2());
+    MethodUser methodUser = (MethodUser) parallelContext.instances().get(MethodUser.class.getName());
+    assertEquals(Arrays.asList("setUser2", "wire"), methodUser.getCalls());
+    assertSame(parallelContext.instances().get("user3"), methodUser.getUser3());
+  }
+
+  @Test(timeout = 30000)
+  public void testParallelWiringOfCycle() throws Exception {
+    DependencyGraph graph = context.dependencyGraph();
+    List<BeanDefinition> cycle = null;
+    for (List<BeanDefinition> component : graph.components()) {
+      if (component.contains(context.getBeanDefinition(CycleUser.class.getName()))) {
+        cycle = component;
+      }
+    }
+    assertNotNull(cycle);
+    assertEquals(3, cycle.size());
+
+    Apex apex = Apex.of().wiringParallelism(4);
+    for (int i = 0; i < 5; i++) {
+      ApexContext parallelContext = new ApexContext();
+      parallelContext.init(apex);
+      CycleUser cycleUser = parallelContext.getBean(CycleUser.class);
+      assertSame(cycleUser, cycleUser.getLeft().getCycleUser());
+      assertSame(cycleUser, cycleUser.getRight().getCycleUser());
+      assertSame(parallelContext.getBean(CycleUser.Left.class), cycleUser.getLeft());
+      assertSame(parallelContext.getBean(CycleUser.Right.class), cycleUser.getRight());
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testConcurrentLazyCycle() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      ApexContext lazyContext = new ApexContext();
+      lazyContext.registerBeanDefinition(BeanDefinition.create(CycleUser.class, true));
+      lazyContext.registerBeanDefinition(BeanDefinition.create(CycleUser.Left.class, true));
+      lazyContext.registerBeanDefinition(BeanDefinition.create(CycleUser.Right.class, true));
+
+      // each thread enters the cycle through a different bean
+      CompletableFuture<CycleUser.Left> left = CompletableFuture.supplyAsync(() -> lazyContext.getBean(CycleUser.Left.class));
+      CompletableFuture<CycleUser.Right> right = CompletableFuture.supplyAsync(() -> lazyContext.getBean(CycleUser.Right.class));
+      CycleUser cycleUser = lazyContext.getBean(CycleUser.class);
+      assertSame(cycleUser, left.get().getCycleUser());
+      assertSame(cycleUser, right.get().getCycleUser());
+      assertSame(left.get(), cycleUser.getLeft());
+      assertSame(right.get(), cycleUser.getRight());
+    }
+  }
+
+  @Test
+  public void testInjectedState() {
+    ApexContext stateContext = new ApexContext();
+    User2 user2 = stateContext.addBean(new User2());
+    StateProbe.context = stateContext;
+    StateProbe probe = stateContext.addBean(new StateProbe());
+    assertSame(user2, probe.user2);
+    assertEquals(BeanState.INJECTED, probe.state);
+    assertEquals(BeanState.READY, stateContext.beanState(StateProbe.class.getName()));
+  }
+
+  @Test
+  public void testGetBeanAfterReplace() {
+    ApexContext replaceContext = new ApexContext();
+    User2 first = replaceContext.addBean(new User2());
+    assertSame(first, replaceContext.getBean(User2.class));
+    assertSame(first, replaceContext.getBean(User2.class));
+
+    User2 second = replaceContext.addBean(new User2());
+    assertSame(second, replaceContext.getBean(User2.class));
+    replaceContext.removeBean(User2.class.getName());
+    assertNull(replaceContext.getBean(User2.class));
+    assertNull(replaceContext.beanState(User2.class.getName()));
+  }
+
+  static class ThreadConfig {
+    String name(Thread thread) {
+      return thread.getName();
+    }
+  }
+
+  static class StateProbe {
+    static ApexContext context;
+    @Inject
+    User2 user2;
+    BeanState state;
+
+    @Inject
+    void wire() {
+      state = context.beanState(StateProbe.class.getName());
+    }
+  }
+
+  static class ThreadUserHolder {
+    @Inject
+    ThreadUser threadUser;
+  }
+
+  static class Link {
+    Link next() {
+      return new Link();
+    }
+  }
+
+  static class ThreadUserProvider {
+    @Inject
+    org.apex.annotation.Provider<ThreadUser> threadUser;
+  }
+
+  /**
+   * Loads the classes of a package itself, without the class it hides, so
+   * that they link against a class that is really absent
+   */
+  static class HidingClassLoader extends ClassLoader {
+    private final String packagePrefix;
+    private final String hidden;
+
+    HidingClassLoader(ClassLoader parent, String packagePrefix, String hidden) {
+      super(parent);
+      this.packagePrefix = packagePrefix;
+      this.hidden = hidden;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (name.equals(hidden)) {
+        throw new ClassNotFoundException(name);
+      }
+      if (!name.startsWith(packagePrefix)) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> cls = findLoadedClass(name);
+        if (cls == null) {
+          try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+            if (in == null) {
+              throw new ClassNotFoundException(name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) != -1; ) {
+              out.write(buffer, 0, n);
+            }
+            cls = defineClass(name, out.toByteArray(), 0, out.size());
+          } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+          }
+        }
+        if (resolve) {
+          resolveClass(cls);
+        }
+        return cls;
+      }
+    }
+  }
+}
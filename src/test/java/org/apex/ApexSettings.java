@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import java.lang.annotation.Annotation;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The settings of the shared {@link Apex} instance that tests change, saved
+ * before a test and restored after it so that tests don't depend on their order
+ *
+ * @author WangYi
+ * @since 2020/11/20
+ */
+final class ApexSettings {
+  private final Apex apex;
+  private final Set<String> packages;
+  private final Set<Class<? extends Annotation>> typeAnnotations;
+  private final Set<TypeFilter> typeFilters;
+  private final boolean lazy;
+  private final boolean parallelWiring;
+  private final int wiringParallelism;
+  private final boolean bytecodeInjection;
+  private final Path scanCache;
+
+  private ApexSettings(Apex apex) {
+    this.apex = apex;
+    this.packages = new LinkedHashSet<>(apex.packages());
+    this.typeAnnotations = new LinkedHashSet<>(apex.typeAnnotations());
+    this.typeFilters = new LinkedHashSet<>(apex.typeFilters());
+    this.lazy = apex.lazy();
+    this.parallelWiring = apex.parallelWiring();
+    this.wiringParallelism = apex.wiringParallelism();
+    this.bytecodeInjection = apex.bytecodeInjection();
+    this.scanCache = apex.scanCache();
+  }
+
+  static ApexSettings save(Apex apex) {
+    return new ApexSettings(apex);
+  }
+
+  void restore() {
+    apex.packages().clear();
+    apex.packages().addAll(packages);
+    apex.typeAnnotations().clear();
+    apex.typeAnnotations().addAll(typeAnnotations);
+    apex.typeFilters().clear();
+    apex.typeFilters().addAll(typeFilters);
+    apex.lazy(lazy);
+    // enables parallel wiring, which is restored next
+    apex.wiringParallelism(wiringParallelism);
+    apex.parallelWiring(parallelWiring);
+    apex.bytecodeInjection(bytecodeInjection);
+    apex.scanCache(scanCache);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author WangYi
+ * @since 2020/11/2
+ */
+public class BeanIndexTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testMergeIndexes() throws IOException {
+    File first = writeIndex("first", "example.bean.User=org.apex.annotation.Singleton\n");
+    File second = writeIndex("second", "# generated\n"
+            + "example.service.UserServiceImpl=org.apex.annotation.Singleton,example.service.UserService\n"
+            + "other.Bean=org.apex.annotation.Singleton\n");
+    URLClassLoader classLoader = new URLClassLoader(new URL[]{
+            first.toURI().toURL(), second.toURI().toURL()}, null);
+
+    BeanIndex beanIndex = BeanIndex.load(classLoader);
+    assertEquals(3, beanIndex.classNames().size());
+    assertEquals(Arrays.asList("example.bean.User", "example.service.UserServiceImpl"),
+            beanIndex.candidates(Collections.singleton("example"), "org.apex.annotation.Singleton"));
+    assertEquals(Collections.singletonList("example.service.UserServiceImpl"),
+            beanIndex.candidates(Collections.emptySet(), "example.service.UserService"));
+    assertTrue(beanIndex.candidates(Collections.singleton("exam"), "org.apex.annotation.Singleton").isEmpty());
+    assertEquals(Collections.singletonList("example.bean.User"), beanIndex.candidates(
+            Collections.singleton("example"), Collections.singleton("example.service"),
+            "org.apex.annotation.Singleton"));
+  }
+
+  @Test
+  public void testRejectJars() throws IOException {
+    File jar = folder.newFile("beans-1.0.jar");
+    try (JarOutputStream outputStream = new JarOutputStream(new FileOutputStream(jar))) {
+      outputStream.putNextEntry(new JarEntry(BeanIndex.INDEX_LOCATION));
+      outputStream.write("example.bean.User=org.apex.annotation.Singleton\n".getBytes(StandardCharsets.UTF_8));
+      outputStream.closeEntry();
+    }
+    File dir = writeIndex("dir", "other.Bean=org.apex.annotation.Singleton\n");
+    URLClassLoader classLoader = new URLClassLoader(new URL[]{
+            jar.toURI().toURL(), dir.toURI().toURL()}, null);
+
+    assertEquals(2, BeanIndex.load(classLoader).classNames().size());
+    BeanIndex beanIndex = BeanIndex.load(classLoader, Collections.singleton("beans-*.jar"));
+    assertEquals(Collections.singleton("other.Bean"), beanIndex.classNames());
+  }
+
+  @Test
+  public void testMissingIndex() throws IOException {
+    URLClassLoader classLoader = new URLClassLoader(new URL[]{
+            folder.newFolder("empty").toURI().toURL()}, null);
+    assertNull(BeanIndex.load(classLoader));
+  }
+
+  private File writeIndex(String name, String content) throws IOException {
+    File root = folder.newFolder(name);
+    File index = new File(root, BeanIndex.INDEX_LOCATION);
+    Files.createDirectories(index.getParentFile().toPath());
+    Files.write(index.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return root;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @author WangYi
+ * @since 2020/11/17
+ */
+public class FieldWritersTest {
+
+  @Test
+  public void testGenerate() throws NoSuchFieldException {
+    List<Field> fields = Arrays.asList(Target.class.getDeclaredField("name"),
+            Target.class.getDeclaredField("count"), Target.class.getDeclaredField("hidden"),
+            Target.class.getDeclaredField("next"));
+    FieldWriter writer = FieldWriters.generate(Target.class, fields);
+    assertNotNull(writer);
+
+    Target target = new Target();
+    writer.write(target, 0, "apex");
+    writer.write(target, 1, 3);
+    writer.write(target, 3, target);
+    assertEquals("apex", target.name);
+    assertEquals(3, target.count);
+    assertSame(target, target.next);
+    assertNull(target.hidden);
+
+    try {
+      writer.write(target, 2, "hidden");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertNull(target.hidden);
+    }
+    try {
+      writer.write(target, 0, 1);
+      fail();
+    } catch (ClassCastException e) {
+      assertEquals("apex", target.name);
+    }
+  }
+
+  @Test
+  public void testNotWritable() throws NoSuchFieldException {
+    assertNull(FieldWriters.generate(Target.class,
+            Arrays.asList(Target.class.getDeclaredField("hidden"))));
+    assertNull(FieldWriters.generate(String.class,
+            Arrays.asList(String.class.getDeclaredField("hash"))));
+  }
+
+  static class Target {
+    String name;
+    int count;
+    private String hidden;
+    protected Target next;
+  }
+}
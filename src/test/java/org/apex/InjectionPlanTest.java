@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import example.bean.MethodUser;
+import example.bean.User;
+import example.bean.User2;
+import example.bean.User3;
+import example.config.ConfigProperty;
+import org.apex.annotation.Inject;
+import org.apex.injector.type.ListTypeInjector;
+import org.apex.injector.type.MapTypeInjector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author WangYi
+ * @since 2020/11/15
+ */
+public class InjectionPlanTest {
+
+  @Test
+  public void testPlan() {
+    InjectionPlan plan = InjectionPlan.of(User.class);
+    assertSame(plan, InjectionPlan.of(User.class));
+    assertEquals(Arrays.asList("user2", "user3", "configProperty", "userService"), names(plan.injectPoints()));
+    assertEquals("example.bean.User2", plan.injectPoints().get(0).key());
+    assertEquals(1, plan.valuePoints().size());
+    assertEquals("config.test.age", plan.valuePoints().get(0).key());
+    assertNull(plan.propertyPrefix());
+    assertTrue(plan.propertyPoints().isEmpty());
+  }
+
+  @Test
+  public void testPropertyBeanPlan() {
+    InjectionPlan plan = InjectionPlan.of(ConfigProperty.class);
+    assertEquals("config.test", plan.propertyPrefix());
+    assertEquals(6, plan.propertyPoints().size());
+    assertEquals("config.test.list", plan.propertyPoints().get(0).key());
+    assertTrue(plan.propertyPoints().get(0).typeInjector() instanceof ListTypeInjector);
+    assertTrue(plan.propertyPoints().get(1).typeInjector() instanceof MapTypeInjector);
+    assertNull(plan.propertyPoints().get(2).typeInjector());
+  }
+
+  @Test
+  public void testInjectMethods() throws Exception {
+    InjectionPlan plan = InjectionPlan.of(MethodUser.class);
+    List<String> names = new ArrayList<>();
+    for (InjectionPlan.InjectionMethod injectMethod : plan.injectMethods()) {
+      names.add(injectMethod.method().getName());
+    }
+    // superclass methods first, the overridden init is no longer an inject method
+    assertEquals(Arrays.asList("setUser2", "wire"), names);
+    assertEquals(Arrays.asList(new BeanDefinition.Dependency(User2.class, null),
+            new BeanDefinition.Dependency(User3.class, null)), plan.injectMethods().get(1).dependencies());
+
+    MethodUser methodUser = new MethodUser();
+    User3 user3 = new User3();
+    plan.injectMethods().get(1).invoke(methodUser, new User2(), user3);
+    assertSame(user3, methodUser.getUser3());
+  }
+
+  @Test
+  public void testBytecodeInjectionPlan() {
+    InjectionPlan reflective = InjectionPlan.of(Writable.class, false);
+    InjectionPlan generated = InjectionPlan.of(Writable.class, true);
+    assertNotSame(reflective, generated);
+    assertNull(reflective.injectPoints().get(0).writer());
+    assertNotNull(generated.injectPoints().get(0).writer());
+
+    // the plan follows the setting, whichever was built first
+    Apex apex = Apex.of().bytecodeInjection(true);
+    try {
+      assertSame(generated, InjectionPlan.of(Writable.class));
+    } finally {
+      apex.bytecodeInjection(false);
+    }
+    assertSame(reflective, InjectionPlan.of(Writable.class));
+  }
+
+  private static List<String> names(List<InjectionPlan.InjectionPoint> points) {
+    List<String> names = new ArrayList<>();
+    for (InjectionPlan.InjectionPoint point : points) {
+      names.add(point.name());
+    }
+    return names;
+  }
+
+  static class Writable {
+    @Inject
+    User2 user2;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import example.bean.BeanFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author WangYi
+ * @since 2020/11/5
+ */
+public class ScanCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ApexSettings settings;
+
+  @Before
+  public void setUp() {
+    settings = ApexSettings.save(Apex.of());
+  }
+
+  @After
+  public void tearDown() {
+    settings.restore();
+  }
+
+  @Test
+  public void testFingerprintInvalidation() throws IOException {
+    final Apex apex = Apex.of().scanCache(folder.newFolder("cache").toPath());
+    apex.packages().add("example");
+    final File classes = folder.newFolder("classes");
+    final File bean = new File(folder.newFolder("classes", "example"), "Bean.class");
+    Files.write(bean.toPath(), new byte[]{1, 2, 3});
+    final List<File> classpath = Collections.singletonList(classes);
+
+    assertNull(ScanCache.create(apex, classpath).read());
+    ScanCache.create(apex, classpath).write(Collections.singletonList("a.Filter"), Arrays.asList("a.Bean", "b.Bean"));
+
+    ScanCache.Entry entry = ScanCache.create(apex, classpath).read();
+    assertNotNull(entry);
+    assertEquals(Collections.singletonList("a.Filter"), entry.typeFilters());
+    assertEquals(Arrays.asList("a.Bean", "b.Bean"), entry.beans());
+
+    Files.write(bean.toPath(), new byte[]{1, 2, 3, 4});
+    assertNull(ScanCache.create(apex, classpath).read());
+  }
+
+  @Test
+  public void testHitAfterDiscovery() throws IOException {
+    final Apex apex = Apex.of().scanCache(folder.newFolder("discovery").toPath());
+    apex.packages().add("example");
+    final Set<TypeFilter> typeFilters = new LinkedHashSet<>(apex.typeFilters());
+    final List<String> scanned = names(Discoverer.discover(apex));
+    // the discovered type filters are not added to the settings the fingerprint covers
+    assertEquals(typeFilters, apex.typeFilters());
+
+    final List<File> classpath = ScanCache.classpathFiles(ReflectionHelper.defaultClassLoader());
+    final File testClasses = new File(BeanFilter.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+    assertTrue(classpath.toString(), classpath.contains(testClasses));
+    ScanCache.Entry entry = ScanCache.create(apex, classpath).read();
+    assertNotNull(entry);
+    assertTrue(entry.typeFilters().contains(BeanFilter.class.getName()));
+    assertEquals(scanned, names(Discoverer.discover(apex)));
+  }
+
+  private static List<String> names(List<BeanDefinition> beanDefinitions) {
+    final List<String> names = new ArrayList<>();
+    for (BeanDefinition beanDefinition : beanDefinitions) {
+      names.add(beanDefinition.name());
+    }
+    return names;
+  }
+}
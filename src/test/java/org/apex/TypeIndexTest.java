@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import org.apex.annotation.Inject;
+import org.apex.annotation.Named;
+import org.apex.annotation.Primary;
+import org.apex.annotation.Qualifier;
+import org.apex.exception.QualifierNotUniqueException;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author WangYi
+ * @since 2020/11/18
+ */
+public class TypeIndexTest {
+
+  @Test
+  public void testIndex() {
+    TypeIndex typeIndex = new TypeIndex();
+    typeIndex.add("first", First.class);
+    typeIndex.add("second", Second.class);
+    assertEquals(Arrays.asList("first", "second"), typeIndex.names(Runnable.class));
+    assertEquals(Collections.singletonList("second"), typeIndex.names(Serializable.class));
+    assertEquals(Arrays.asList("first", "second"), typeIndex.names(Object.class));
+
+    typeIndex.add("second", String.class);
+    assertEquals(Collections.singletonList("first"), typeIndex.names(Runnable.class));
+    assertEquals(Collections.singletonList("second"), typeIndex.names(CharSequence.class));
+
+    typeIndex.remove("first");
+    assertTrue(typeIndex.names(Runnable.class).isEmpty());
+    assertTrue(typeIndex.names(First.class).isEmpty());
+  }
+
+  @Test
+  public void testQualifiedCandidate() {
+    ApexContext context = new ApexContext();
+    First first = context.addBean(new First());
+    context.addBean(new Second());
+    assertSame(first, context.resolveCandidate(Runnable.class, "first"));
+    assertNull(context.resolveCandidate(CharSequence.class, null));
+    // a qualifier matching none of the candidates finds nothing, a single one included
+    assertNull(context.resolveCandidate(Runnable.class, "third"));
+    assertNull(context.resolveCandidate(Serializable.class, "first"));
+    try {
+      context.resolveCandidate(Runnable.class, null);
+      fail("Runnable has two candidates");
+    } catch (QualifierNotUniqueException expected) {
+      // no qualifier to choose between first and second
+    }
+  }
+
+  @Test
+  public void testPrimaryCandidate() {
+    ApexContext context = new ApexContext();
+    First first = context.addBean(new First());
+    Third third = context.addBean(new Third());
+    context.addBean(new Second());
+    assertSame(third, context.resolveCandidate(Runnable.class, null));
+    assertSame(first, context.resolveCandidate(Runnable.class, "first"));
+    assertSame(third, context.resolveCandidate(Runnable.class, "fast"));
+
+    assertEquals("first", InjectionPlan.of(Consumer.class).injectPoints().get(1).key());
+    Consumer consumer = context.addBean(new Consumer());
+    assertSame(third, consumer.runnable);
+    assertSame(first, consumer.named);
+    assertSame(third, consumer.fast);
+
+    context.removeBean(Third.class.getName());
+    try {
+      context.resolveCandidate(Runnable.class, null);
+      fail("Runnable has two candidates and no primary one");
+    } catch (QualifierNotUniqueException expected) {
+      // the cached selection is dropped when a candidate is removed
+    }
+  }
+
+  @Test
+  public void testBeansByType() {
+    ApexContext context = new ApexContext();
+    First first = context.addBean(new First());
+    List<Runnable> runnables = context.getBeanByType(Runnable.class);
+    assertEquals(Collections.singletonList(first), runnables);
+    assertSame(runnables, context.getBeanByType(Runnable.class));
+    assertTrue(context.getBeanByType(Second.class).isEmpty());
+
+    Second second = context.addBean(new Second());
+    assertEquals(Arrays.asList(first, second), context.getBeanByType(Runnable.class));
+    assertEquals(Collections.singletonList(second), context.getBeanByType(Serializable.class));
+
+    context.removeBean(First.class.getName());
+    assertEquals(Collections.singletonList(second), context.getBeanByType(Runnable.class));
+
+    // a lazy bean is created when its type is listed
+    context.registerBeanDefinition(BeanDefinition.create(Third.class, true));
+    assertEquals(BeanState.DEFINED, context.beanState(Third.class.getName()));
+    List<Runnable> withLazy = context.getBeanByType(Runnable.class);
+    assertEquals(BeanState.READY, context.beanState(Third.class.getName()));
+    assertEquals(Arrays.asList(second, context.getBean(Third.class)), withLazy);
+  }
+
+  @Named("first")
+  public static class First implements Runnable {
+    @Override
+    public void run() {
+    }
+  }
+
+  public static class Second implements Runnable, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void run() {
+    }
+  }
+
+  @Primary
+  @Fast
+  public static class Third implements Runnable {
+    @Override
+    public void run() {
+    }
+  }
+
+  @Qualifier("fast")
+  @Retention(RetentionPolicy.RUNTIME)
+  public @interface Fast {
+  }
+
+  public static class Consumer {
+    @Inject
+    Runnable runnable;
+
+    @Inject
+    @Named("first")
+    Runnable named;
+
+    @Inject
+    @Fast
+    Runnable fast;
+  }
+}
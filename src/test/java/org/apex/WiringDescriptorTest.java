@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex;
+
+import example.bean.User;
+import example.bean.User2;
+import example.config.ConfigProperty;
+import example.service.UserService;
+import example.service.UserServiceImpl;
+import org.apex.annotation.ConfigBean;
+import org.apex.annotation.Inject;
+import org.apex.annotation.PropertyBean;
+import org.apex.annotation.Singleton;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author WangYi
+ * @since 2020/11/13
+ */
+public class WiringDescriptorTest {
+
+  private ApexSettings settings;
+
+  @Before
+  public void setUp() {
+    settings = ApexSettings.save(Apex.of());
+  }
+
+  @After
+  public void tearDown() {
+    settings.restore();
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    Apex apex = Apex.of();
+    apex.packages().add("example");
+    apex.typeAnnotation(ConfigBean.class, PropertyBean.class, Singleton.class);
+    WiringDescriptor descriptor = WiringDescriptor.create(apex);
+    assertTrue(descriptor.problems().toString(), descriptor.problems().isEmpty());
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    descriptor.write(outputStream);
+    WiringDescriptor read = WiringDescriptor.read(new ByteArrayInputStream(outputStream.toByteArray()),
+            getClass().getClassLoader());
+    assertTrue(read.accepts(apex));
+    assertEquals(descriptor.options(), read.options());
+    assertEquals(names(descriptor), names(read));
+
+    // every setting that changes the discovered beans is checked, not only the packages
+    apex.lazy(true);
+    assertFalse(read.accepts(apex));
+    apex.lazy(false);
+    TypeFilter typeFilter = cls -> true;
+    apex.typeFilter(typeFilter);
+    assertFalse(read.accepts(apex));
+    apex.typeFilters().remove(typeFilter);
+    assertTrue(read.accepts(apex));
+
+    BeanDefinition user3 = null;
+    for (BeanDefinition beanDefinition : read.beanDefinitions()) {
+      if (beanDefinition.name().equals("user3")) {
+        user3 = beanDefinition;
+      }
+    }
+    assertNotNull(user3);
+    assertNotNull(user3.factoryMethod());
+
+    WiringDescriptor.Wiring wiring = read.wiring(User.class);
+    assertEquals(User2.class.getName(), wiring.fields().get("user2"));
+    assertEquals("user3", wiring.fields().get("user3"));
+    assertEquals(UserServiceImpl.class.getName(), wiring.fields().get("userService"));
+    assertEquals("config.test", read.wiring(ConfigProperty.class).propertyPrefix());
+  }
+
+  @Test
+  public void testProblems() {
+    WiringDescriptor descriptor = WiringDescriptor.create(Collections.singleton("example"), Arrays.asList(
+            BeanDefinition.create(UserServiceImpl.class, false),
+            BeanDefinition.create(OtherUserService.class, false),
+            BeanDefinition.create(Client.class, false)));
+    assertEquals(2, descriptor.problems().size());
+    assertTrue(descriptor.problems().get(0).startsWith("Ambiguous injection point " + Client.class.getName() + "#userService"));
+    assertTrue(descriptor.problems().get(1).startsWith("Unresolved injection point " + Client.class.getName() + "#user2"));
+  }
+
+  @Test
+  public void testSuperclassPoint() {
+    WiringDescriptor descriptor = WiringDescriptor.create(Collections.singleton("example"), Arrays.asList(
+            BeanDefinition.create(Service.class, false),
+            BeanDefinition.create(ServiceClient.class, false)));
+    assertTrue(descriptor.problems().toString(), descriptor.problems().isEmpty());
+    assertEquals(Service.class.getName(), descriptor.wiring(ServiceClient.class).fields().get("service"));
+  }
+
+  private static List<String> names(WiringDescriptor descriptor) {
+    List<String> names = new ArrayList<>();
+    for (BeanDefinition beanDefinition : descriptor.beanDefinitions()) {
+      names.add(beanDefinition.name() + ":" + beanDefinition.lazy() + ":" + beanDefinition.qualifiers());
+    }
+    return names;
+  }
+
+  public static class OtherUserService implements UserService {
+    @Override
+    public void say() {
+    }
+  }
+
+  public static class Client {
+    @Inject
+    private UserService userService;
+    @Inject
+    private User2 user2;
+  }
+
+  public abstract static class AbstractService {
+  }
+
+  public static class Service extends AbstractService {
+  }
+
+  public static class ServiceClient {
+    @Inject
+    private AbstractService service;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex.benchmark;
+
+import org.apex.FieldWriter;
+import org.apex.FieldWriters;
+import org.apex.InjectionPlan;
+import org.apex.annotation.Inject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing injection points through {@link java.lang.reflect.Field#set},
+ * through the setter handles of the {@link InjectionPlan} and through a
+ * generated {@link FieldWriter}, over a graph of beans injected repeatedly.
+ * <p>
+ * Run with {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main FieldAccessBenchmark}.
+ *
+ * @author WangYi
+ * @since 2020/11/16
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldAccessBenchmark {
+  @Param({"100", "10000"})
+  private int beans;
+
+  private Node[] graph;
+  private List<InjectionPlan.InjectionPoint> points;
+  private FieldWriter writer;
+  private int fields;
+
+  @Setup
+  public void setUp() {
+    graph = new Node[beans];
+    for (int i = 0; i < beans; i++) {
+      graph[i] = new Node();
+    }
+    points = InjectionPlan.of(Node.class).injectPoints();
+    final List<Field> fields = new ArrayList<>();
+    for (InjectionPlan.InjectionPoint point : points) {
+      fields.add(point.field());
+    }
+    this.fields = fields.size();
+    writer = FieldWriters.generate(Node.class, fields);
+  }
+
+  @Benchmark
+  public Node[] reflective() throws IllegalAccessException {
+    for (int i = 0; i < graph.length; i++) {
+      final Node node = graph[i];
+      final Node next = graph[(i + 1) % graph.length];
+      for (InjectionPlan.InjectionPoint point : points) {
+        point.field().set(node, next);
+      }
+    }
+    return graph;
+  }
+
+  @Benchmark
+  public Node[] methodHandle() throws IllegalAccessException {
+    for (int i = 0; i < graph.length; i++) {
+      final Node node = graph[i];
+      final Node next = graph[(i + 1) % graph.length];
+      for (InjectionPlan.InjectionPoint point : points) {
+        point.set(node, next);
+      }
+    }
+    return graph;
+  }
+
+  @Benchmark
+  public Node[] bytecode() {
+    for (int i = 0; i < graph.length; i++) {
+      final Node node = graph[i];
+      final Node next = graph[(i + 1) % graph.length];
+      for (int field = 0; field < fields; field++) {
+        writer.write(node, field, next);
+      }
+    }
+    return graph;
+  }
+
+  public static class Node {
+    @Inject
+    Node a;
+    @Inject
+    Node b;
+    @Inject
+    Node c;
+    @Inject
+    Node d;
+    @Inject
+    Node e;
+    @Inject
+    Node f;
+    @Inject
+    Node g;
+    @Inject
+    Node h;
+  }
+}
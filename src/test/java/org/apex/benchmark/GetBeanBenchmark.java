@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 1619kHz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.apex.benchmark;
+
+import org.apex.ApexContext;
+import org.apex.BeanDefinition;
+import org.apex.annotation.RequestScoped;
+import org.apex.annotation.ThreadScoped;
+import org.apex.scope.RequestScope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a typed and a named lookup of a ready singleton, as done by
+ * request handlers on every request, and the typed lookup of thread and
+ * request scoped beans once created in their scope. Run with {@code -prof gc}
+ * to check that the lookups don't allocate.
+ *
+ * @author WangYi
+ * @since 2020/11/19
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetBeanBenchmark {
+  private ApexContext context;
+
+  @Setup
+  public void setUp() {
+    context = new ApexContext();
+    context.addBean(new UserHandler());
+    context.addBean(new OrderHandler());
+    context.addBean(new PaymentHandler());
+    context.registerBeanDefinition(BeanDefinition.create(ThreadHandler.class, true));
+    context.registerBeanDefinition(BeanDefinition.create(RequestHandler.class, true));
+  }
+
+  @Benchmark
+  public OrderHandler getBeanByClass() {
+    return context.getBean(OrderHandler.class);
+  }
+
+  @Benchmark
+  public OrderHandler getBeanByName() {
+    return context.getBean("org.apex.benchmark.GetBeanBenchmark$OrderHandler");
+  }
+
+  @Benchmark
+  public ThreadHandler getThreadScopedBean() {
+    return context.getBean(ThreadHandler.class);
+  }
+
+  @Benchmark
+  public RequestHandler getRequestScopedBean(Request request) {
+    return context.getBean(RequestHandler.class);
+  }
+
+  /**
+   * A request open on the benchmark thread for the whole run
+   */
+  @State(Scope.Thread)
+  public static class Request {
+    private RequestScope.Request request;
+
+    @Setup
+    public void open(GetBeanBenchmark benchmark) {
+      request = benchmark.context.scope(RequestScope.class).open();
+    }
+
+    @TearDown
+    public void close() {
+      request.close();
+    }
+  }
+
+  public static class UserHandler {
+  }
+
+  public static class OrderHandler {
+  }
+
+  public static class PaymentHandler {
+  }
+
+  @ThreadScoped
+  public static class ThreadHandler {
+  }
+
+  @RequestScoped
+  public static class RequestHandler {
+  }
+}